@@ -0,0 +1,114 @@
+package com.veeradeveloper.videocutter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class AnnexBConverter {
+
+    private int[] startCodes = new int[16];
+    private int[] startCodeLengths = new int[16];
+    private int startCodesCount;
+    private ByteBuffer copyBuffer;
+
+    // Returns a buffer whose position..limit holds the sample as 4-byte length prefixed NAL units.
+    // Samples that only use 4-byte start codes are rewritten inside byteBuf, otherwise they are copied.
+    // A sample whose 4-byte lengths add up to its size is already length prefixed and left as it is, even if it begins
+    // like a start code. Other samples without a start code keep the old behaviour: their first 4 bytes become the length.
+    public ByteBuffer convert(ByteBuffer byteBuf, int offset, int size) {
+        int end = offset + size;
+        if (size < 4) {
+            byteBuf.limit(end);
+            byteBuf.position(offset);
+            return byteBuf;
+        }
+        findStartCodes(byteBuf, offset, end);
+
+        boolean inPlace = true;
+        for (int a = 0; a < startCodesCount; a++) {
+            if (startCodeLengths[a] != 4) {
+                inPlace = false;
+                break;
+            }
+        }
+        if (inPlace) {
+            for (int a = 0; a < startCodesCount; a++) {
+                int nalEnd = a + 1 < startCodesCount ? startCodes[a + 1] : end;
+                byteBuf.putInt(startCodes[a], nalEnd - startCodes[a] - 4);
+            }
+            byteBuf.limit(end);
+            byteBuf.position(offset);
+            return byteBuf;
+        }
+
+        int newSize = size + startCodesCount;
+        if (copyBuffer == null || copyBuffer.capacity() < newSize) {
+            copyBuffer = ByteBuffer.allocateDirect(newSize + 16 * 1024);
+        }
+        copyBuffer.clear();
+        for (int a = 0; a < startCodesCount; a++) {
+            int nalStart = startCodes[a] + startCodeLengths[a];
+            int nalEnd = a + 1 < startCodesCount ? startCodes[a + 1] : end;
+            copyBuffer.putInt(nalEnd - nalStart);
+            byteBuf.limit(nalEnd);
+            byteBuf.position(nalStart);
+            copyBuffer.put(byteBuf);
+        }
+        copyBuffer.flip();
+        return copyBuffer;
+    }
+
+    private void findStartCodes(ByteBuffer byteBuf, int offset, int end) {
+        startCodesCount = 0;
+        // the payload of length prefixed NAL units can contain 00 00 01, so it must not be scanned; neither can their
+        // first prefix, which reads 00 00 01 xx for a NAL unit of 256 to 511 bytes
+        if (findLengthPrefixes(byteBuf, offset, end)) {
+            return;
+        }
+        if (byteBuf.get(offset) != 0 || byteBuf.get(offset + 1) != 0 || (byteBuf.get(offset + 2) != 1 && (byteBuf.get(offset + 2) != 0 || byteBuf.get(offset + 3) != 1))) {
+            startCodes[0] = offset;
+            startCodeLengths[0] = 4;
+            startCodesCount = 1;
+            return;
+        }
+        int a = offset;
+        while (a + 3 <= end) {
+            int b = byteBuf.get(a + 2) & 0xff;
+            if (b > 1) {
+                a += 3;
+            } else if (b == 1 && byteBuf.get(a + 1) == 0 && byteBuf.get(a) == 0) {
+                boolean longCode = a > offset && byteBuf.get(a - 1) == 0;
+                addStartCode(longCode ? a - 1 : a, longCode ? 4 : 3);
+                a += 3;
+            } else {
+                a++;
+            }
+        }
+    }
+
+    private boolean findLengthPrefixes(ByteBuffer byteBuf, int offset, int end) {
+        int a = offset;
+        while (a + 4 <= end) {
+            int length = byteBuf.getInt(a);
+            if (length <= 0 || length > end - a - 4) {
+                break;
+            }
+            addStartCode(a, 4);
+            a += 4 + length;
+        }
+        if (a != end) {
+            startCodesCount = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private void addStartCode(int position, int length) {
+        if (startCodesCount == startCodes.length) {
+            startCodes = Arrays.copyOf(startCodes, startCodesCount * 2);
+            startCodeLengths = Arrays.copyOf(startCodeLengths, startCodesCount * 2);
+        }
+        startCodes[startCodesCount] = position;
+        startCodeLengths[startCodesCount] = length;
+        startCodesCount++;
+    }
+}
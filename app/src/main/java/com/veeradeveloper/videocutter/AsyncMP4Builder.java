@@ -0,0 +1,271 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+@TargetApi(16)
+public class AsyncMP4Builder {
+
+    private static final int RING_SIZE = 16;
+    private static final int MIN_SLOT_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    private static final long MAX_TRACK_LEAD_US = 1000000;
+    private static final ArrayList<ByteBuffer> bufferPool = new ArrayList<>();
+
+    private static class Slot {
+        private ByteBuffer data;
+        private MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private int trackIndex;
+        private boolean isAudio;
+        private boolean ready;
+    }
+
+    private final Object sync = new Object();
+    private MP4Builder builder;
+    private Slot[] ring = new Slot[RING_SIZE];
+    private int head = 0;
+    private int tail = 0;
+    private int used = 0;
+    private long[] trackTimes = new long[4];
+    private Thread[] trackProducers = new Thread[4];
+    private boolean[] trackFinished = new boolean[4];
+    private boolean finished = false;
+    private int dataWrittenCount = 0;
+    private Exception writeError = null;
+    private Thread writerThread;
+    private ConvertProgress progress;
+    private ConvertMetrics metrics;
+
+    public AsyncMP4Builder(MP4Builder mp4Builder) {
+        builder = mp4Builder;
+        for (int a = 0; a < RING_SIZE; a++) {
+            ring[a] = new Slot();
+        }
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "MP4WriterThread");
+        writerThread.start();
+    }
+
+    public int addTrack(MediaFormat mediaFormat, boolean isAudio) throws Exception {
+        synchronized (sync) {
+            while (used != 0 && writeError == null) {
+                sync.wait();
+            }
+            checkWriteError();
+            return builder.addTrack(mediaFormat, isAudio);
+        }
+    }
+
+    public void setProgress(ConvertProgress convertProgress) {
+        progress = convertProgress;
+    }
+
+    public void setMetrics(ConvertMetrics convertMetrics) {
+        metrics = convertMetrics;
+    }
+
+    public long getResumeTime(boolean isAudio) {
+        return builder.getResumeTime(isAudio);
+    }
+
+    public long copyTrimmedTracks(Mp4Demuxer demuxer, long startUs, long endUs) throws Exception {
+        waitForPendingSamples();
+        return new Mp4TrimCopier(demuxer, builder).copy(startUs, endUs);
+    }
+
+    public long copyTrimmedTracks(Mp4Demuxer demuxer, CutList cutList) throws Exception {
+        waitForPendingSamples();
+        return new Mp4TrimCopier(demuxer, builder).copy(cutList);
+    }
+
+    private void waitForPendingSamples() throws Exception {
+        synchronized (sync) {
+            while (used != 0 && writeError == null) {
+                sync.wait();
+            }
+            checkWriteError();
+        }
+    }
+
+    // Marks every track written from the calling thread as complete, so other producers stop waiting for it.
+    public void finishWriting() {
+        synchronized (sync) {
+            Thread currentThread = Thread.currentThread();
+            for (int a = 0; a < trackProducers.length; a++) {
+                if (trackProducers[a] == currentThread) {
+                    trackFinished[a] = true;
+                }
+            }
+            sync.notifyAll();
+        }
+    }
+
+    // Copies the sample into the ring and returns immediately. Blocks while the ring is full, or while this sample is
+    // more than MAX_TRACK_LEAD_US ahead of a track that another thread is still producing, so concurrent tracks interleave.
+    // Returns true if the writer thread has finished an mdat chunk since the previous call.
+    public boolean writeSampleData(int trackIndex, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo, boolean isAudio) throws Exception {
+        long queueStart = System.nanoTime();
+        Slot slot;
+        synchronized (sync) {
+            while ((used == RING_SIZE || isTrackAhead(trackIndex, bufferInfo.presentationTimeUs)) && writeError == null && !finished) {
+                sync.wait();
+            }
+            checkWriteError();
+            if (finished) {
+                throw new IllegalStateException("movie is already finished");
+            }
+            slot = ring[tail];
+            tail = (tail + 1) % RING_SIZE;
+            used++;
+            if (trackIndex >= 0) {
+                if (trackIndex >= trackTimes.length) {
+                    trackTimes = Arrays.copyOf(trackTimes, trackIndex + 4);
+                    trackProducers = Arrays.copyOf(trackProducers, trackIndex + 4);
+                    trackFinished = Arrays.copyOf(trackFinished, trackIndex + 4);
+                }
+                trackTimes[trackIndex] = bufferInfo.presentationTimeUs;
+                trackProducers[trackIndex] = Thread.currentThread();
+            }
+        }
+
+        if (slot.data == null || slot.data.capacity() < bufferInfo.size) {
+            recycleBuffer(slot.data);
+            slot.data = obtainBuffer(bufferInfo.size);
+        }
+        slot.data.clear();
+        byteBuf.limit(bufferInfo.offset + bufferInfo.size);
+        byteBuf.position(bufferInfo.offset);
+        slot.data.put(byteBuf);
+        slot.data.flip();
+        slot.info.set(0, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+        slot.trackIndex = trackIndex;
+        slot.isAudio = isAudio;
+        if (progress != null) {
+            progress.addSample(bufferInfo.size, bufferInfo.presentationTimeUs, isAudio);
+        }
+
+        boolean dataWritten;
+        synchronized (sync) {
+            slot.ready = true;
+            sync.notifyAll();
+            dataWritten = dataWrittenCount != 0;
+            dataWrittenCount = 0;
+        }
+        if (metrics != null) {
+            metrics.record(ConvertMetrics.STAGE_MUX_QUEUE, queueStart);
+        }
+        return dataWritten;
+    }
+
+    public void finishMovie(boolean error) throws Exception {
+        synchronized (sync) {
+            finished = true;
+            sync.notifyAll();
+        }
+        writerThread.join();
+        for (int a = 0; a < RING_SIZE; a++) {
+            recycleBuffer(ring[a].data);
+            ring[a].data = null;
+        }
+        long finishStart = System.nanoTime();
+        builder.finishMovie(error);
+        if (metrics != null) {
+            metrics.record(ConvertMetrics.STAGE_FINISH_MOVIE, finishStart);
+        }
+        synchronized (sync) {
+            checkWriteError();
+        }
+    }
+
+    private boolean isTrackAhead(int trackIndex, long presentationTimeUs) {
+        Thread currentThread = Thread.currentThread();
+        for (int a = 0; a < trackProducers.length; a++) {
+            if (a != trackIndex && trackProducers[a] != null && trackProducers[a] != currentThread && !trackFinished[a] && presentationTimeUs > trackTimes[a] + MAX_TRACK_LEAD_US) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Slot slot;
+            synchronized (sync) {
+                while (!ring[head].ready && !(finished && used == 0)) {
+                    try {
+                        sync.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!ring[head].ready) {
+                    return;
+                }
+                slot = ring[head];
+            }
+            boolean dataWritten;
+            try {
+                long writeStart = System.nanoTime();
+                int size = slot.info.size;
+                dataWritten = builder.writeSampleData(slot.trackIndex, slot.data, slot.info, slot.isAudio);
+                if (metrics != null) {
+                    metrics.record(ConvertMetrics.STAGE_MUX_WRITE, writeStart);
+                    metrics.addSampleWritten(size, slot.isAudio);
+                }
+            } catch (Exception e) {
+                synchronized (sync) {
+                    writeError = e;
+                    used = 0;
+                    sync.notifyAll();
+                }
+                return;
+            }
+            synchronized (sync) {
+                slot.ready = false;
+                head = (head + 1) % RING_SIZE;
+                used--;
+                if (dataWritten) {
+                    dataWrittenCount++;
+                }
+                sync.notifyAll();
+            }
+        }
+    }
+
+    private void checkWriteError() throws Exception {
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    private static ByteBuffer obtainBuffer(int size) {
+        synchronized (bufferPool) {
+            for (int a = bufferPool.size() - 1; a >= 0; a--) {
+                if (bufferPool.get(a).capacity() >= size) {
+                    return bufferPool.remove(a);
+                }
+            }
+        }
+        return ByteBuffer.allocateDirect(Math.max(MIN_SLOT_SIZE, size + size / 4));
+    }
+
+    private static void recycleBuffer(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.add(buffer);
+            }
+        }
+    }
+}
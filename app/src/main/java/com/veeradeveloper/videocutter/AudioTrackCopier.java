@@ -0,0 +1,162 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+// Copies the audio track of the source into the muxer on its own thread while the video is transcoded, either the
+// samples between start and end or every range of a cut list. The thread finishes writing to the muxer when it stops,
+// so the muxer never waits for audio that will not come.
+@TargetApi(16)
+public class AudioTrackCopier extends Thread {
+
+    public interface Listener {
+        boolean isCanceled();
+
+        void onDataWritten();
+    }
+
+    private Extractor extractor;
+    private int trackIndex = -1;
+    private MediaFormat trackFormat;
+    private AsyncMP4Builder mediaMuxer;
+    private long start;
+    private long end;
+    private CutList cutList;
+    private Listener listener;
+    private Exception error;
+
+    public AudioTrackCopier(AsyncMP4Builder muxer, long startTime, long endTime, Listener copierListener) {
+        super("AudioTrackCopier");
+        mediaMuxer = muxer;
+        start = startTime;
+        end = endTime;
+        listener = copierListener;
+    }
+
+    public AudioTrackCopier(AsyncMP4Builder muxer, CutList list, Listener copierListener) {
+        this(muxer, list.getStart(0), list.getEnd(list.getSegmentsCount() - 1), copierListener);
+        cutList = list;
+    }
+
+    // The audio track to copy, with the extractor's track already selected. Set before start() or from openSource().
+    public void setSource(Extractor source, int sourceTrackIndex, MediaFormat format) {
+        extractor = source;
+        trackIndex = sourceTrackIndex;
+        trackFormat = format;
+    }
+
+    // Called on the copier thread before copying, so opening the source does not hold up the video.
+    protected void openSource() throws Exception {
+    }
+
+    protected void releaseSource() {
+    }
+
+    @Override
+    public void run() {
+        try {
+            openSource();
+            if (trackIndex >= 0) {
+                int muxerTrackIndex = mediaMuxer.addTrack(trackFormat, true);
+                ByteBuffer buffer = ByteBuffer.allocateDirect(trackFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE));
+                if (cutList != null) {
+                    copySegments(muxerTrackIndex, buffer);
+                } else {
+                    copySamples(muxerTrackIndex, buffer);
+                }
+            }
+        } catch (Exception e) {
+            error = e;
+        } finally {
+            mediaMuxer.finishWriting();
+            releaseSource();
+        }
+    }
+
+    public void finish() throws Exception {
+        join();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void checkCanceled() {
+        if (listener.isCanceled()) {
+            throw new RuntimeException("canceled conversion");
+        }
+    }
+
+    private void copySamples(int muxerTrackIndex, ByteBuffer buffer) throws Exception {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        extractor.seekTo(start > 0 ? start : 0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        long lastTimestamp = -100;
+        while (true) {
+            checkCanceled();
+            int index = extractor.getSampleTrackIndex();
+            if (index == -1) {
+                return;
+            } else if (index == trackIndex) {
+                info.size = extractor.readSampleData(buffer, 0);
+                if (info.size < 0) {
+                    return;
+                }
+                info.presentationTimeUs = extractor.getSampleTime();
+                if (info.size > 0) {
+                    if (end >= 0 && info.presentationTimeUs >= end) {
+                        return;
+                    }
+                    if (info.presentationTimeUs > lastTimestamp) {
+                        writeSample(muxerTrackIndex, buffer, info);
+                    }
+                    lastTimestamp = info.presentationTimeUs;
+                }
+            }
+            extractor.advance();
+        }
+    }
+
+    private void copySegments(int muxerTrackIndex, ByteBuffer buffer) throws Exception {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        long lastTimestamp = -100;
+        for (int segment = 0; segment < cutList.getSegmentsCount(); segment++) {
+            checkCanceled();
+            extractor.seekTo(cutList.getStart(segment), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            while (true) {
+                checkCanceled();
+                int index = extractor.getSampleTrackIndex();
+                if (index == -1) {
+                    return;
+                } else if (index == trackIndex) {
+                    info.size = extractor.readSampleData(buffer, 0);
+                    if (info.size < 0) {
+                        return;
+                    }
+                    long sampleTime = extractor.getSampleTime();
+                    if (!cutList.isBeforeEnd(segment, sampleTime)) {
+                        break;
+                    }
+                    if (info.size > 0 && sampleTime >= cutList.getStart(segment)) {
+                        info.presentationTimeUs = cutList.getOutputTime(segment, sampleTime);
+                        if (info.presentationTimeUs > lastTimestamp) {
+                            writeSample(muxerTrackIndex, buffer, info);
+                            lastTimestamp = info.presentationTimeUs;
+                        }
+                    }
+                }
+                extractor.advance();
+            }
+        }
+    }
+
+    private void writeSample(int muxerTrackIndex, ByteBuffer buffer, MediaCodec.BufferInfo info) throws Exception {
+        info.offset = 0;
+        info.flags = extractor.getSampleFlags();
+        if (mediaMuxer.writeSampleData(muxerTrackIndex, buffer, info, true)) {
+            listener.onDataWritten();
+        }
+    }
+}
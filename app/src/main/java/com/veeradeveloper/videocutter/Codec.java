@@ -0,0 +1,33 @@
+package com.veeradeveloper.videocutter;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+// The part of a codec the transcode pipeline drives. Configuring, starting and releasing stay with the owner.
+public interface Codec {
+
+    interface Callback {
+        void onInputBufferAvailable(Codec codec, int index);
+
+        void onOutputBufferAvailable(Codec codec, int index, MediaCodec.BufferInfo info);
+
+        void onOutputFormatChanged(Codec codec, MediaFormat format);
+
+        void onError(Codec codec, Exception e);
+    }
+
+    // Must be called before the codec is configured.
+    void setCallback(Callback callback);
+
+    ByteBuffer getInputBuffer(int index);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+
+    void releaseOutputBuffer(int index, boolean render);
+
+    void signalEndOfInputStream();
+}
@@ -0,0 +1,283 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+// Event driven decode -> render -> encode -> mux loop. Codec callbacks only queue events; they are handled on the
+// thread calling run(), which owns the GL context, so it sleeps until a codec has something for it instead of polling.
+@TargetApi(18)
+public class CodecPipeline implements Codec.Callback {
+
+    public interface Listener {
+        boolean isCanceled();
+
+        void onVideoStarted(long presentationTimeUs) throws Exception;
+
+        void onDataWritten();
+    }
+
+    private static final String MIME_TYPE = "video/avc";
+    private static final long EVENT_TIMEOUT_MS = 10000;
+    private static final int EVENT_INPUT = 0;
+    private static final int EVENT_OUTPUT = 1;
+    private static final int EVENT_FORMAT = 2;
+    private static final int EVENT_ERROR = 3;
+
+    private static class Event {
+        private int type;
+        private int index;
+        private MediaCodec.BufferInfo info;
+        private MediaFormat format;
+        private Exception error;
+    }
+
+    private final Object sync = new Object();
+    private ArrayDeque<Event> decoderEvents = new ArrayDeque<>();
+    private ArrayDeque<Event> encoderEvents = new ArrayDeque<>();
+    private Codec decoder;
+    private Codec encoder;
+    private CutList cutList;
+    private Listener listener;
+    private ConvertMetrics metrics = new ConvertMetrics();
+
+    private Extractor extractor;
+    private int trackIndex;
+    private FrameRenderer renderer;
+    private AsyncMP4Builder mediaMuxer;
+    private int width;
+    private int height;
+
+    private boolean inputDone;
+    private boolean decoderDone;
+    private boolean outputDone;
+    private int inputSegment;
+    private int videoSegment;
+    private long videoTime = -1;
+    private int videoTrackIndex = -5;
+
+    public CodecPipeline(Codec videoDecoder, Codec videoEncoder, CutList list, Listener pipelineListener) {
+        decoder = videoDecoder;
+        encoder = videoEncoder;
+        cutList = list;
+        listener = pipelineListener;
+        decoder.setCallback(this);
+        encoder.setCallback(this);
+    }
+
+    public void setMetrics(ConvertMetrics convertMetrics) {
+        metrics = convertMetrics;
+    }
+
+    // Runs until the encoder signals end of stream. Returns the source time of the first rendered frame, or -1.
+    public long run(Extractor videoExtractor, int videoIndex, FrameRenderer frameRenderer, AsyncMP4Builder muxer, int resultWidth, int resultHeight) throws Exception {
+        extractor = videoExtractor;
+        trackIndex = videoIndex;
+        renderer = frameRenderer;
+        mediaMuxer = muxer;
+        width = resultWidth;
+        height = resultHeight;
+        while (!outputDone) {
+            Event event;
+            boolean fromEncoder;
+            long waitStart = System.nanoTime();
+            synchronized (sync) {
+                long deadline = System.currentTimeMillis() + EVENT_TIMEOUT_MS;
+                while (encoderEvents.isEmpty() && decoderEvents.isEmpty()) {
+                    long timeout = deadline - System.currentTimeMillis();
+                    if (timeout <= 0) {
+                        throw new RuntimeException("no codec events for " + EVENT_TIMEOUT_MS + " ms");
+                    }
+                    sync.wait(timeout);
+                }
+                fromEncoder = !encoderEvents.isEmpty();
+                event = fromEncoder ? encoderEvents.poll() : decoderEvents.poll();
+            }
+            metrics.record(ConvertMetrics.STAGE_CODEC_EVENT_WAIT, waitStart);
+            if (listener.isCanceled()) {
+                throw new RuntimeException("canceled conversion");
+            }
+            if (event.type == EVENT_ERROR) {
+                throw event.error;
+            }
+            if (fromEncoder) {
+                handleEncoderEvent(event);
+            } else {
+                handleDecoderEvent(event);
+            }
+        }
+        return videoTime;
+    }
+
+    private void handleDecoderEvent(Event event) throws Exception {
+        if (event.type == EVENT_INPUT) {
+            if (inputDone) {
+                return;
+            }
+            long inputStart = System.nanoTime();
+            if (inputSegment + 1 < cutList.getSegmentsCount() && !cutList.isBeforeEnd(inputSegment, extractor.getSampleTime()) && (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                inputSegment++;
+                if (extractor.getSampleTime() < cutList.getStart(inputSegment)) {
+                    extractor.seekTo(cutList.getStart(inputSegment), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                }
+            }
+            int chunkSize = -1;
+            if (extractor.getSampleTrackIndex() == trackIndex) {
+                chunkSize = extractor.readSampleData(decoder.getInputBuffer(event.index), 0);
+            }
+            if (chunkSize < 0) {
+                decoder.queueInputBuffer(event.index, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                inputDone = true;
+            } else {
+                decoder.queueInputBuffer(event.index, 0, chunkSize, extractor.getSampleTime(), 0);
+                extractor.advance();
+            }
+            metrics.record(ConvertMetrics.STAGE_DECODER_INPUT, inputStart);
+        } else if (event.type == EVENT_FORMAT) {
+            Tracer.trace(Tracer.LEVEL_INFO, "decoder output format " + event.format);
+        } else if (event.type == EVENT_OUTPUT) {
+            MediaCodec.BufferInfo info = event.info;
+            if (decoderDone) {
+                decoder.releaseOutputBuffer(event.index, false);
+                return;
+            }
+            boolean doRender = info.size != 0;
+            while (videoSegment + 1 < cutList.getSegmentsCount() && !cutList.isBeforeEnd(videoSegment, info.presentationTimeUs)) {
+                videoSegment++;
+            }
+            if (!cutList.isBeforeEnd(videoSegment, info.presentationTimeUs)) {
+                inputDone = true;
+                doRender = false;
+                info.flags |= MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+            }
+            if (info.presentationTimeUs < cutList.getStart(videoSegment)) {
+                doRender = false;
+                Tracer.trace(Tracer.LEVEL_DEBUG, "drop frame before segment start", cutList.getStart(videoSegment), info.presentationTimeUs);
+            } else if (doRender && videoTime == -1) {
+                videoTime = info.presentationTimeUs;
+                listener.onVideoStarted(videoTime);
+            }
+            long renderStart = System.nanoTime();
+            decoder.releaseOutputBuffer(event.index, doRender);
+            if (doRender) {
+                boolean errorWait = false;
+                try {
+                    renderer.awaitFrame();
+                } catch (Exception e) {
+                    errorWait = true;
+                    Tracer.trace(Tracer.LEVEL_WARN, "awaitFrame failed", info.presentationTimeUs);
+                }
+                if (!errorWait) {
+                    renderer.drawFrame(cutList.getOutputTime(videoSegment, info.presentationTimeUs) * 1000);
+                    metrics.addFrameRendered();
+                }
+                metrics.record(ConvertMetrics.STAGE_RENDER, renderStart);
+            }
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                Tracer.trace(Tracer.LEVEL_INFO, "decoder end of stream", info.presentationTimeUs);
+                decoderDone = true;
+                encoder.signalEndOfInputStream();
+            }
+        }
+    }
+
+    private void handleEncoderEvent(Event event) throws Exception {
+        if (event.type == EVENT_FORMAT) {
+            if (videoTrackIndex == -5) {
+                videoTrackIndex = mediaMuxer.addTrack(event.format, false);
+            }
+        } else if (event.type == EVENT_OUTPUT) {
+            MediaCodec.BufferInfo info = event.info;
+            ByteBuffer encodedData = encoder.getOutputBuffer(event.index);
+            if (encodedData == null) {
+                throw new RuntimeException("encoderOutputBuffer " + event.index + " was null");
+            }
+            if (info.size > 1) {
+                if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                    Tracer.trace(Tracer.LEVEL_VERBOSE, "encoded sample", info.presentationTimeUs, info.size);
+                    if (mediaMuxer.writeSampleData(videoTrackIndex, encodedData, info, false)) {
+                        listener.onDataWritten();
+                    }
+                } else if (videoTrackIndex == -5) {
+                    videoTrackIndex = mediaMuxer.addTrack(createFormat(encodedData, info), false);
+                }
+            }
+            outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            encoder.releaseOutputBuffer(event.index, false);
+        }
+    }
+
+    // Same split of the encoder's codec config into sps and pps as the polling loop in MediaController.
+    private MediaFormat createFormat(ByteBuffer encodedData, MediaCodec.BufferInfo info) {
+        byte[] csd = new byte[info.size];
+        encodedData.limit(info.offset + info.size);
+        encodedData.position(info.offset);
+        encodedData.get(csd);
+        ByteBuffer sps = null;
+        ByteBuffer pps = null;
+        for (int a = info.size - 1; a > 3; a--) {
+            if (csd[a] == 1 && csd[a - 1] == 0 && csd[a - 2] == 0 && csd[a - 3] == 0) {
+                sps = ByteBuffer.allocate(a - 3);
+                pps = ByteBuffer.allocate(info.size - (a - 3));
+                sps.put(csd, 0, a - 3).position(0);
+                pps.put(csd, a - 3, info.size - (a - 3)).position(0);
+                break;
+            }
+        }
+        MediaFormat newFormat = MediaFormat.createVideoFormat(MIME_TYPE, width, height);
+        if (sps != null && pps != null) {
+            newFormat.setByteBuffer("csd-0", sps);
+            newFormat.setByteBuffer("csd-1", pps);
+        }
+        return newFormat;
+    }
+
+    private void post(Codec codec, Event event) {
+        synchronized (sync) {
+            if (codec == encoder) {
+                encoderEvents.add(event);
+            } else {
+                decoderEvents.add(event);
+            }
+            sync.notifyAll();
+        }
+    }
+
+    @Override
+    public void onInputBufferAvailable(Codec codec, int index) {
+        Event event = new Event();
+        event.type = EVENT_INPUT;
+        event.index = index;
+        post(codec, event);
+    }
+
+    @Override
+    public void onOutputBufferAvailable(Codec codec, int index, MediaCodec.BufferInfo info) {
+        Event event = new Event();
+        event.type = EVENT_OUTPUT;
+        event.index = index;
+        event.info = new MediaCodec.BufferInfo();
+        event.info.set(info.offset, info.size, info.presentationTimeUs, info.flags);
+        post(codec, event);
+    }
+
+    @Override
+    public void onOutputFormatChanged(Codec codec, MediaFormat format) {
+        Event event = new Event();
+        event.type = EVENT_FORMAT;
+        event.format = format;
+        post(codec, event);
+    }
+
+    @Override
+    public void onError(Codec codec, Exception e) {
+        Event event = new Event();
+        event.type = EVENT_ERROR;
+        event.error = e;
+        post(codec, event);
+    }
+}
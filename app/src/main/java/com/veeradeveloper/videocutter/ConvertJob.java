@@ -0,0 +1,69 @@
+package com.veeradeveloper.videocutter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConvertJob extends FutureTask<Boolean> implements Comparable<ConvertJob> {
+
+    public interface ProgressListener {
+        void onProgress(ConvertJob job, ConvertProgress progress);
+    }
+
+    public interface MetricsListener {
+        void onConversionMetrics(ConvertJob job, ConvertMetrics metrics);
+    }
+
+    public static final int PRIORITY_LOW = -1;
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    private static final AtomicLong jobsCount = new AtomicLong();
+
+    private ConvertMessage messageObject;
+    private ConvertProgress progress;
+    private ConvertMetrics metrics;
+    private int priority;
+    private long order;
+
+    public ConvertJob(ConvertMessage message, ConvertProgress jobProgress, ConvertMetrics jobMetrics, int jobPriority, Callable<Boolean> callable) {
+        super(callable);
+        messageObject = message;
+        progress = jobProgress;
+        metrics = jobMetrics;
+        priority = jobPriority;
+        order = jobsCount.getAndIncrement();
+    }
+
+    public ConvertMessage getMessageObject() {
+        return messageObject;
+    }
+
+    public ConvertProgress getProgress() {
+        return progress;
+    }
+
+    public ConvertMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    // The conversion polls messageObject.canceled and unwinds on its own. It is never interrupted: the interrupt
+    // would still be set while the moov box is written and close the output's FileChannel under it.
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        messageObject.canceled = true;
+        return super.cancel(false);
+    }
+
+    @Override
+    public int compareTo(ConvertJob another) {
+        if (priority != another.priority) {
+            return priority > another.priority ? -1 : 1;
+        }
+        return order < another.order ? -1 : (order == another.order ? 0 : 1);
+    }
+}
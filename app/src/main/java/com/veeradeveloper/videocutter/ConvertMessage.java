@@ -0,0 +1,6 @@
+package com.veeradeveloper.videocutter;
+
+// What a conversion and its ConvertJob share: the flag the conversion polls to unwind after cancel().
+public class ConvertMessage {
+    public volatile boolean canceled;
+}
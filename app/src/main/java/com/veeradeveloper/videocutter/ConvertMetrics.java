@@ -0,0 +1,140 @@
+package com.veeradeveloper.videocutter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Where the time of one conversion goes. Stages are timed by the thread doing the work (conversion, audio copy or
+// mp4 writer thread) and only add to atomic counters, so recording is cheap and the numbers can be read at any time.
+public class ConvertMetrics {
+
+    // reading a sample from the extractor and queueing it to the decoder
+    public static final int STAGE_DECODER_INPUT = 0;
+    // waiting for a free decoder input buffer
+    public static final int STAGE_DECODER_INPUT_WAIT = 1;
+    // waiting for a decoded frame
+    public static final int STAGE_DECODER_OUTPUT_WAIT = 2;
+    // awaitNewImage, drawImage and swapBuffers of one frame
+    public static final int STAGE_RENDER = 3;
+    // waiting for encoded data
+    public static final int STAGE_ENCODER_OUTPUT_WAIT = 4;
+    // callback driven pipeline waiting for the next codec event
+    public static final int STAGE_CODEC_EVENT_WAIT = 5;
+    // handing a sample to the muxer, including waiting for room in its ring
+    public static final int STAGE_MUX_QUEUE = 6;
+    // MP4Builder.writeSampleData on the writer thread
+    public static final int STAGE_MUX_WRITE = 7;
+    // writing the moov box
+    public static final int STAGE_FINISH_MOVIE = 8;
+    private static final String[] STAGE_NAMES = {"decoder_input", "decoder_input_wait", "decoder_output_wait", "render", "encoder_output_wait", "codec_event_wait", "mux_queue", "mux_write", "finish_movie"};
+
+    private final AtomicLongArray stageCounts = new AtomicLongArray(STAGE_NAMES.length);
+    private final AtomicLongArray stageTimes = new AtomicLongArray(STAGE_NAMES.length);
+    private final AtomicLongArray stageMaxTimes = new AtomicLongArray(STAGE_NAMES.length);
+    private final AtomicLong framesRendered = new AtomicLong();
+    private final AtomicLong videoSamples = new AtomicLong();
+    private final AtomicLong audioSamples = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long startTimeNs;
+    private volatile long finishTimeNs;
+
+    public void start() {
+        startTimeNs = System.nanoTime();
+    }
+
+    public void finish() {
+        finishTimeNs = System.nanoTime();
+    }
+
+    // Adds the time since startNs, taken with System.nanoTime() when the stage began.
+    public void record(int stage, long startNs) {
+        long time = System.nanoTime() - startNs;
+        stageCounts.incrementAndGet(stage);
+        stageTimes.addAndGet(stage, time);
+        long max = stageMaxTimes.get(stage);
+        while (time > max && !stageMaxTimes.compareAndSet(stage, max, time)) {
+            max = stageMaxTimes.get(stage);
+        }
+    }
+
+    public void addFrameRendered() {
+        framesRendered.incrementAndGet();
+    }
+
+    public void addSampleWritten(int size, boolean isAudio) {
+        bytesWritten.addAndGet(size);
+        if (isAudio) {
+            audioSamples.incrementAndGet();
+        } else {
+            videoSamples.incrementAndGet();
+        }
+    }
+
+    public long getStageCount(int stage) {
+        return stageCounts.get(stage);
+    }
+
+    public long getStageTimeNs(int stage) {
+        return stageTimes.get(stage);
+    }
+
+    public long getStageMaxTimeNs(int stage) {
+        return stageMaxTimes.get(stage);
+    }
+
+    public long getFramesRendered() {
+        return framesRendered.get();
+    }
+
+    public long getVideoSamples() {
+        return videoSamples.get();
+    }
+
+    public long getAudioSamples() {
+        return audioSamples.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getElapsedNs() {
+        if (startTimeNs == 0) {
+            return 0;
+        }
+        return (finishTimeNs != 0 ? finishTimeNs : System.nanoTime()) - startTimeNs;
+    }
+
+    // Video samples written per second of wall time.
+    public float getFramesPerSecond() {
+        long elapsed = getElapsedNs();
+        return elapsed > 0 ? videoSamples.get() * 1000000000f / elapsed : 0;
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("elapsed_ms", getElapsedNs() / 1000000);
+        json.put("fps", getFramesPerSecond());
+        json.put("frames_rendered", framesRendered.get());
+        json.put("video_samples", videoSamples.get());
+        json.put("audio_samples", audioSamples.get());
+        json.put("bytes_written", bytesWritten.get());
+        JSONObject stages = new JSONObject();
+        for (int a = 0; a < STAGE_NAMES.length; a++) {
+            long count = stageCounts.get(a);
+            if (count == 0) {
+                continue;
+            }
+            JSONObject stage = new JSONObject();
+            stage.put("count", count);
+            stage.put("total_ms", stageTimes.get(a) / 1000000);
+            stage.put("avg_us", stageTimes.get(a) / count / 1000);
+            stage.put("max_us", stageMaxTimes.get(a) / 1000);
+            stages.put(STAGE_NAMES[a], stage);
+        }
+        json.put("stages", stages);
+        return json;
+    }
+}
@@ -0,0 +1,81 @@
+package com.veeradeveloper.videocutter;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Progress of one conversion job. The conversion threads only do atomic updates and readers never lock,
+// so MediaController can publish a snapshot of every job on a fixed cadence without touching the hot loop.
+public class ConvertProgress {
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicInteger framesEncoded = new AtomicInteger();
+    private volatile long startUs;
+    private volatile long durationUs = -1;
+    private volatile long positionUs = -1;
+    private volatile long startTimeMs;
+    private volatile boolean finished;
+
+    // Source range being converted, used for the fraction and the ETA. A duration below zero means unknown.
+    public void start(long sourceStartUs, long sourceDurationUs) {
+        startUs = sourceStartUs;
+        durationUs = sourceDurationUs;
+        startTimeMs = SystemClock.elapsedRealtime();
+    }
+
+    public void addSample(int size, long presentationTimeUs, boolean isAudio) {
+        bytesWritten.addAndGet(size);
+        if (!isAudio) {
+            framesEncoded.incrementAndGet();
+            if (presentationTimeUs > positionUs) {
+                positionUs = presentationTimeUs;
+            }
+        }
+    }
+
+    public void finish(long totalBytes) {
+        if (totalBytes > 0) {
+            bytesWritten.set(totalBytes);
+        }
+        finished = true;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public int getFramesEncoded() {
+        return framesEncoded.get();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    // Share of the source range written so far, from 0 to 1, or -1 if the duration is unknown.
+    public float getFraction() {
+        if (finished) {
+            return 1;
+        }
+        long duration = durationUs;
+        long position = positionUs;
+        if (duration <= 0 || position < 0) {
+            return duration <= 0 ? -1 : 0;
+        }
+        return Math.max(0, Math.min(1, (float) (position - startUs) / duration));
+    }
+
+    // Estimated time left in milliseconds from the average speed so far, or -1 before there is enough to estimate.
+    public long getEtaMs() {
+        if (finished) {
+            return 0;
+        }
+        float fraction = getFraction();
+        if (fraction <= 0) {
+            return -1;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - startTimeMs;
+        return (long) (elapsed * (1 - fraction) / fraction);
+    }
+}
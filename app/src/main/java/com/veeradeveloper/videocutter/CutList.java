@@ -0,0 +1,102 @@
+package com.veeradeveloper.videocutter;
+
+import java.util.Arrays;
+
+// Sorted, non-overlapping list of [start, end) ranges (in microseconds) to keep from the source.
+// An end below zero keeps everything until the end of the source.
+public class CutList {
+
+    private long[] starts = new long[4];
+    private long[] ends = new long[4];
+    private long[] outputStarts = new long[4];
+    private int segmentsCount;
+
+    public CutList() {
+
+    }
+
+    public CutList(long startUs, long endUs) {
+        addSegment(startUs, endUs);
+    }
+
+    // Adds a range to keep, merging it with the ranges it overlaps or touches.
+    public void addSegment(long startUs, long endUs) {
+        if (startUs < 0) {
+            startUs = 0;
+        }
+        if (endUs <= 0) {
+            endUs = -1;
+        } else if (endUs <= startUs) {
+            return;
+        }
+        int index = 0;
+        while (index < segmentsCount && starts[index] < startUs) {
+            index++;
+        }
+        if (segmentsCount == starts.length) {
+            starts = Arrays.copyOf(starts, segmentsCount * 2);
+            ends = Arrays.copyOf(ends, segmentsCount * 2);
+            outputStarts = Arrays.copyOf(outputStarts, segmentsCount * 2);
+        }
+        System.arraycopy(starts, index, starts, index + 1, segmentsCount - index);
+        System.arraycopy(ends, index, ends, index + 1, segmentsCount - index);
+        starts[index] = startUs;
+        ends[index] = endUs;
+        segmentsCount++;
+
+        int count = 0;
+        for (int a = 0; a < segmentsCount; a++) {
+            if (count > 0 && (ends[count - 1] < 0 || starts[a] <= ends[count - 1])) {
+                if (ends[count - 1] >= 0 && (ends[a] < 0 || ends[a] > ends[count - 1])) {
+                    ends[count - 1] = ends[a];
+                }
+            } else {
+                starts[count] = starts[a];
+                ends[count] = ends[a];
+                count++;
+            }
+        }
+        segmentsCount = count;
+
+        long outputTime = starts[0];
+        for (int a = 0; a < segmentsCount; a++) {
+            outputStarts[a] = outputTime;
+            if (ends[a] >= 0) {
+                outputTime += ends[a] - starts[a];
+            }
+        }
+    }
+
+    public int getSegmentsCount() {
+        return segmentsCount;
+    }
+
+    public long getStart(int segment) {
+        return starts[segment];
+    }
+
+    public long getEnd(int segment) {
+        return ends[segment];
+    }
+
+    public boolean isBeforeEnd(int segment, long timeUs) {
+        return ends[segment] < 0 || timeUs < ends[segment];
+    }
+
+    // Maps a source timestamp inside the segment to the output timeline, where the kept ranges follow each other
+    // without gaps. The first segment keeps its source timestamps.
+    public long getOutputTime(int segment, long timeUs) {
+        return timeUs - starts[segment] + outputStarts[segment];
+    }
+
+    public long getDuration() {
+        long duration = 0;
+        for (int a = 0; a < segmentsCount; a++) {
+            if (ends[a] < 0) {
+                return -1;
+            }
+            duration += ends[a] - starts[a];
+        }
+        return duration;
+    }
+}
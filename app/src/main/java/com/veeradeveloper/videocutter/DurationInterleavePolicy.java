@@ -0,0 +1,20 @@
+package com.veeradeveloper.videocutter;
+
+public class DurationInterleavePolicy implements InterleavePolicy {
+    private long chunkDurationUs;
+    private long maxChunkBytes;
+
+    public DurationInterleavePolicy(long chunkDurationMs) {
+        this(chunkDurationMs, 4 * 1024 * 1024);
+    }
+
+    public DurationInterleavePolicy(long chunkDurationMs, long maxBytes) {
+        chunkDurationUs = chunkDurationMs * 1000;
+        maxChunkBytes = maxBytes;
+    }
+
+    @Override
+    public boolean isChunkComplete(Track track, int samplesCount, long durationUs, long bytes) {
+        return durationUs >= chunkDurationUs || bytes >= maxChunkBytes;
+    }
+}
@@ -0,0 +1,20 @@
+package com.veeradeveloper.videocutter;
+
+import java.nio.ByteBuffer;
+
+// The part of MediaExtractor the transcode pipeline reads the video track through. Flags and seek modes are
+// the MediaExtractor constants; selecting tracks and releasing stay with the owner.
+public interface Extractor {
+
+    int getSampleTrackIndex();
+
+    long getSampleTime();
+
+    int getSampleFlags();
+
+    int readSampleData(ByteBuffer buffer, int offset);
+
+    boolean advance();
+
+    void seekTo(long timeUs, int mode);
+}
@@ -0,0 +1,11 @@
+package com.veeradeveloper.videocutter;
+
+// Moves a decoded frame to the encoder: the decoder renders into it with releaseOutputBuffer(index, true), then
+// the pipeline waits for the frame and draws it into the encoder input. Called on the pipeline thread only.
+public interface FrameRenderer {
+
+    // Throws if the released frame did not arrive in time; the pipeline then skips it.
+    void awaitFrame();
+
+    void drawFrame(long presentationTimeNs);
+}
@@ -0,0 +1,5 @@
+package com.veeradeveloper.videocutter;
+
+public interface InterleavePolicy {
+    boolean isChunkComplete(Track track, int samplesCount, long durationUs, long bytes);
+}
@@ -11,15 +11,21 @@ package com.veeradeveloper.videocutter;
 import android.annotation.TargetApi;
 import android.media.MediaCodec;
 import android.media.MediaFormat;
+import android.util.Log;
 
 import com.coremedia.iso.BoxParser;
 import com.coremedia.iso.IsoFile;
 import com.coremedia.iso.IsoTypeWriter;
 import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.ChunkOffset64BitBox;
+import com.coremedia.iso.boxes.ChunkOffsetBox;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
 import com.coremedia.iso.boxes.Container;
 import com.coremedia.iso.boxes.DataEntryUrlBox;
 import com.coremedia.iso.boxes.DataInformationBox;
 import com.coremedia.iso.boxes.DataReferenceBox;
+import com.coremedia.iso.boxes.EditBox;
+import com.coremedia.iso.boxes.EditListBox;
 import com.coremedia.iso.boxes.FileTypeBox;
 import com.coremedia.iso.boxes.HandlerBox;
 import com.coremedia.iso.boxes.MediaBox;
@@ -35,17 +41,23 @@ import com.coremedia.iso.boxes.SyncSampleBox;
 import com.coremedia.iso.boxes.TimeToSampleBox;
 import com.coremedia.iso.boxes.TrackBox;
 import com.coremedia.iso.boxes.TrackHeaderBox;
+import com.coremedia.iso.boxes.fragment.MovieExtendsBox;
+import com.coremedia.iso.boxes.fragment.SampleFlags;
+import com.coremedia.iso.boxes.fragment.TrackExtendsBox;
 import com.googlecode.mp4parser.DataSource;
 import com.googlecode.mp4parser.util.Matrix;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -53,52 +65,193 @@ import java.util.List;
 public class MP4Builder {
 
     private InterleaveChunkMdat mdat = null;
+    private Mp4FragmentWriter fragmentWriter = null;
+    private boolean fragmentHeaderWritten = false;
     private Mp4Movie currentMp4Movie = null;
-    private FileOutputStream fos = null;
+    private Closeable fos = null;
     private FileChannel fc = null;
+    private WriteBehindChannel output = null;
     private long dataOffset = 0;
     private long writedSinceLastMdat = 0;
     private boolean writeNewMdat = true;
-    private HashMap<Track, long[]> track2SampleSizes = new HashMap<>();
-    private ByteBuffer sizeBuffer = null;
+    private long dataStartOffset = 0;
+    private long chunkOffsetShift = 0;
+    private InterleavePolicy interleavePolicy = null;
+    private ArrayList<PendingChunk> pendingChunks = new ArrayList<>();
+    private ArrayList<PendingChunk> completeChunks = new ArrayList<>();
+    private ArrayList<PendingChunk> freeChunks = new ArrayList<>();
+    private long completeChunksBytes = 0;
+    private long[] lastChunkSampleTimes = new long[0];
+    private MediaCodec.BufferInfo chunkSampleInfo = null;
+    private AnnexBConverter annexBConverter = new AnnexBConverter();
+    private MediaCodec.BufferInfo convertedSampleInfo = new MediaCodec.BufferInfo();
+    private Mp4Checkpoint checkpoint = null;
+    private long[] resumeTimes = null;
+    private boolean[] resumedTracksUsed = null;
+    private long movieBoxSize = 0;
+
+    private static final long CHECKPOINT_INTERVAL_BYTES = 2 * 1024 * 1024;
+    private static final long MAX_COMPLETE_CHUNKS_BYTES = 8 * 1024 * 1024;
+
+    private static class PendingChunk {
+        private int trackIndex;
+        private int count = 0;
+        private long[] presentationTimes = new long[64];
+        private int[] sizes = new int[64];
+        private int[] flags = new int[64];
+        private ByteBuffer data = ByteBuffer.allocateDirect(64 * 1024);
+
+        private PendingChunk(int index) {
+            trackIndex = index;
+        }
+
+        private void add(ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo) {
+            if (count == sizes.length) {
+                presentationTimes = Arrays.copyOf(presentationTimes, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+                flags = Arrays.copyOf(flags, count * 2);
+            }
+            if (data.remaining() < bufferInfo.size) {
+                ByteBuffer newData = ByteBuffer.allocateDirect(Math.max(data.capacity() * 2, data.position() + bufferInfo.size));
+                data.flip();
+                newData.put(data);
+                data = newData;
+            }
+            data.put(byteBuf);
+            presentationTimes[count] = bufferInfo.presentationTimeUs;
+            sizes[count] = bufferInfo.size;
+            flags[count] = bufferInfo.flags;
+            count++;
+        }
+
+        private long getDurationUs() {
+            return count == 0 ? 0 : presentationTimes[count - 1] - presentationTimes[0];
+        }
+    }
 
     public MP4Builder createMovie(Mp4Movie mp4Movie) throws Exception {
         currentMp4Movie = mp4Movie;
 
-        fos = new FileOutputStream(mp4Movie.getCacheFile());
-        fc = fos.getChannel();
+        Mp4Checkpoint.State resumeState = null;
+        if (mp4Movie.getCheckpointFile() != null && !mp4Movie.isFragmented()) {
+            resumeState = Mp4Checkpoint.read(mp4Movie.getCheckpointFile());
+            if (resumeState != null && mp4Movie.getCacheFile().length() < resumeState.dataOffset) {
+                resumeState = null;
+            }
+        }
 
         FileTypeBox fileTypeBox = createFileTypeBox();
-        fileTypeBox.getBox(fc);
-        dataOffset += fileTypeBox.getSize();
-        writedSinceLastMdat += dataOffset;
-
-        mdat = new InterleaveChunkMdat();
+        if (resumeState != null) {
+            RandomAccessFile file = new RandomAccessFile(mp4Movie.getCacheFile(), "rw");
+            file.setLength(resumeState.dataOffset);
+            fc = file.getChannel();
+            fc.position(resumeState.dataOffset);
+            fos = file;
+            output = new WriteBehindChannel(fc);
+            dataStartOffset = fileTypeBox.getSize();
+            dataOffset = resumeState.dataOffset;
+        } else {
+            FileOutputStream stream = new FileOutputStream(mp4Movie.getCacheFile());
+            fc = stream.getChannel();
+            fos = stream;
+            output = new WriteBehindChannel(fc);
+            fileTypeBox.getBox(output);
+            dataOffset += fileTypeBox.getSize();
+            dataStartOffset = dataOffset;
+            writedSinceLastMdat += dataOffset;
+        }
 
-        sizeBuffer = ByteBuffer.allocateDirect(4);
+        if (mp4Movie.isFragmented()) {
+            fragmentWriter = new Mp4FragmentWriter(output, mp4Movie.getFragmentDurationUs(), mp4Movie.getFragmentMaxBytes());
+        } else {
+            mdat = new InterleaveChunkMdat();
+            interleavePolicy = mp4Movie.getInterleavePolicy();
+            if (interleavePolicy != null) {
+                chunkSampleInfo = new MediaCodec.BufferInfo();
+            }
+            if (mp4Movie.getCheckpointFile() != null) {
+                checkpoint = new Mp4Checkpoint(mp4Movie.getCheckpointFile(), resumeState, CHECKPOINT_INTERVAL_BYTES);
+                if (resumeState != null) {
+                    restoreTracks(resumeState);
+                }
+            }
+        }
 
         return this;
     }
 
+    private void restoreTracks(Mp4Checkpoint.State state) throws Exception {
+        int count = state.tracks.size();
+        resumeTimes = new long[count];
+        resumedTracksUsed = new boolean[count];
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        for (int a = 0; a < count; a++) {
+            Mp4Checkpoint.TrackState trackState = state.tracks.get(a);
+            int trackIndex = currentMp4Movie.addTrack(trackState.trackInfo);
+            for (int b = 0; b < trackState.samplesCount; b++) {
+                info.set(0, trackState.sizes[b], trackState.presentationTimes[b], trackState.flags[b]);
+                currentMp4Movie.addSample(trackIndex, trackState.offsets[b], info);
+            }
+            resumeTimes[trackIndex] = trackState.getLastPresentationTimeUs();
+        }
+    }
+
+    // Presentation time of the last sample of the given kind restored from a checkpoint, or -1 if nothing was restored.
+    // Samples up to this time are already in the file and are skipped if they are written again.
+    public long getResumeTime(boolean isAudio) {
+        long time = -1;
+        if (resumeTimes != null) {
+            ArrayList<Track> tracks = currentMp4Movie.getTracks();
+            for (int a = 0; a < resumeTimes.length; a++) {
+                if (tracks.get(a).isAudio() == isAudio) {
+                    time = Math.max(time, resumeTimes[a]);
+                }
+            }
+        }
+        return time;
+    }
+
+    private void commitCheckpointIfNeeded() throws Exception {
+        if (checkpoint != null && checkpoint.needsCommit(dataOffset)) {
+            output.flush();
+            checkpoint.commit(dataOffset);
+        }
+    }
+
+    private void discardCheckpoint() {
+        if (checkpoint != null) {
+            checkpoint.delete();
+            checkpoint = null;
+        }
+    }
+
     private void flushCurrentMdat() throws Exception {
-        long oldPosition = fc.position();
-        fc.position(mdat.getOffset());
-        mdat.getBox(fc);
-        fc.position(oldPosition);
+        output.writeAt(mdat.getOffset(), mdat.getHeader());
         mdat.setDataOffset(0);
         mdat.setContentSize(0);
-        fos.flush();
     }
 
     public boolean writeSampleData(int trackIndex, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo, boolean isAudio) throws Exception {
-        if (writeNewMdat) {
-            mdat.setContentSize(0);
-            mdat.getBox(fc);
-            mdat.setDataOffset(dataOffset);
-            dataOffset += 16;
-            writedSinceLastMdat += 16;
-            writeNewMdat = false;
+        if (resumeTimes != null && trackIndex >= 0 && trackIndex < resumeTimes.length && bufferInfo.presentationTimeUs <= resumeTimes[trackIndex]) {
+            return false;
         }
+        if (isAudio) {
+            byteBuf.limit(bufferInfo.offset + bufferInfo.size);
+            byteBuf.position(bufferInfo.offset);
+        } else {
+            byteBuf = annexBConverter.convert(byteBuf, bufferInfo.offset, bufferInfo.size);
+            if (byteBuf.remaining() != bufferInfo.size) {
+                convertedSampleInfo.set(0, byteBuf.remaining(), bufferInfo.presentationTimeUs, bufferInfo.flags);
+                bufferInfo = convertedSampleInfo;
+            }
+        }
+        if (fragmentWriter != null) {
+            return writeFragmentedSampleData(trackIndex, byteBuf, bufferInfo, isAudio);
+        }
+        if (interleavePolicy != null) {
+            return writeInterleavedSampleData(trackIndex, byteBuf, bufferInfo);
+        }
+        startMdatIfNeeded();
 
         mdat.setContentSize(mdat.getContentSize() + bufferInfo.size);
         writedSinceLastMdat += bufferInfo.size;
@@ -112,55 +265,345 @@ public class MP4Builder {
         }
 
         currentMp4Movie.addSample(trackIndex, dataOffset, bufferInfo);
-        byteBuf.position(bufferInfo.offset + (isAudio ? 0 : 4));
-        byteBuf.limit(bufferInfo.offset + bufferInfo.size);
+        if (checkpoint != null) {
+            checkpoint.addSample(trackIndex, dataOffset, bufferInfo);
+        }
+        output.write(byteBuf);
+        dataOffset += bufferInfo.size;
+        if (flush) {
+            commitCheckpointIfNeeded();
+        }
+
+        return flush;
+    }
 
-        if (!isAudio) {
-            sizeBuffer.position(0);
-            sizeBuffer.putInt(bufferInfo.size - 4);
-            sizeBuffer.position(0);
-            fc.write(sizeBuffer);
+    private void startMdatIfNeeded() throws Exception {
+        if (writeNewMdat) {
+            mdat.setContentSize(0);
+            mdat.getBox(output);
+            mdat.setDataOffset(dataOffset);
+            dataOffset += 16;
+            writedSinceLastMdat += 16;
+            writeNewMdat = false;
         }
+    }
 
-        fc.write(byteBuf);
-        dataOffset += bufferInfo.size;
+    private boolean writeInterleavedSampleData(int trackIndex, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo) throws Exception {
+        if (trackIndex < 0 || trackIndex >= currentMp4Movie.getTracks().size()) {
+            return false;
+        }
+        while (pendingChunks.size() <= trackIndex) {
+            pendingChunks.add(obtainChunk(pendingChunks.size()));
+            lastChunkSampleTimes = Arrays.copyOf(lastChunkSampleTimes, pendingChunks.size());
+            lastChunkSampleTimes[pendingChunks.size() - 1] = Long.MIN_VALUE;
+        }
+        PendingChunk chunk = pendingChunks.get(trackIndex);
+        chunk.add(byteBuf, bufferInfo);
+        lastChunkSampleTimes[trackIndex] = bufferInfo.presentationTimeUs;
+        if (interleavePolicy.isChunkComplete(currentMp4Movie.getTracks().get(trackIndex), chunk.count, chunk.getDurationUs(), chunk.data.position())) {
+            pendingChunks.set(trackIndex, obtainChunk(trackIndex));
+            completeChunks.add(chunk);
+            completeChunksBytes += chunk.data.position();
+            return writeCompleteChunks(false);
+        }
+        return false;
+    }
 
-        if (flush) {
-            fos.flush();
+    private PendingChunk obtainChunk(int trackIndex) {
+        if (freeChunks.isEmpty()) {
+            return new PendingChunk(trackIndex);
+        }
+        PendingChunk chunk = freeChunks.remove(freeChunks.size() - 1);
+        chunk.trackIndex = trackIndex;
+        return chunk;
+    }
+
+    // Complete chunks go to the file in the order of their first sample, so a player reading the movie moves
+    // through it front to back instead of jumping between runs of one track. A chunk waits until every other
+    // track is past its start, or until too much data is held back, e.g. when one track has already ended.
+    private boolean writeCompleteChunks(boolean all) throws Exception {
+        boolean flush = false;
+        while (!completeChunks.isEmpty()) {
+            int earliest = -1;
+            for (int a = 0; a < completeChunks.size(); a++) {
+                PendingChunk chunk = completeChunks.get(a);
+                if (isFirstCompleteChunk(a) && (earliest == -1 || chunk.presentationTimes[0] < completeChunks.get(earliest).presentationTimes[0])) {
+                    earliest = a;
+                }
+            }
+            PendingChunk chunk = completeChunks.get(earliest);
+            if (!all && completeChunksBytes < MAX_COMPLETE_CHUNKS_BYTES && !canWriteChunk(chunk)) {
+                break;
+            }
+            completeChunks.remove(earliest);
+            completeChunksBytes -= chunk.data.position();
+            if (writeChunk(chunk)) {
+                flush = true;
+            }
+            freeChunks.add(chunk);
         }
         return flush;
     }
 
+    private boolean isFirstCompleteChunk(int index) {
+        int trackIndex = completeChunks.get(index).trackIndex;
+        for (int a = 0; a < index; a++) {
+            if (completeChunks.get(a).trackIndex == trackIndex) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean canWriteChunk(PendingChunk chunk) {
+        long startTime = chunk.presentationTimes[0];
+        for (int a = 0; a < pendingChunks.size(); a++) {
+            if (a == chunk.trackIndex || lastChunkSampleTimes[a] == Long.MIN_VALUE || hasCompleteChunk(a)) {
+                continue;
+            }
+            PendingChunk pending = pendingChunks.get(a);
+            long nextTime = pending.count != 0 ? pending.presentationTimes[0] : lastChunkSampleTimes[a];
+            if (nextTime < startTime) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasCompleteChunk(int trackIndex) {
+        for (int a = 0; a < completeChunks.size(); a++) {
+            if (completeChunks.get(a).trackIndex == trackIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean writeChunk(PendingChunk chunk) throws Exception {
+        if (chunk.count == 0) {
+            return false;
+        }
+        startMdatIfNeeded();
+        long chunkSize = chunk.data.position();
+        for (int a = 0; a < chunk.count; a++) {
+            chunkSampleInfo.set(0, chunk.sizes[a], chunk.presentationTimes[a], chunk.flags[a]);
+            currentMp4Movie.addSample(chunk.trackIndex, dataOffset, chunkSampleInfo);
+            if (checkpoint != null) {
+                checkpoint.addSample(chunk.trackIndex, dataOffset, chunkSampleInfo);
+            }
+            dataOffset += chunk.sizes[a];
+        }
+        chunk.data.flip();
+        output.write(chunk.data);
+        chunk.data.clear();
+        chunk.count = 0;
+
+        mdat.setContentSize(mdat.getContentSize() + chunkSize);
+        writedSinceLastMdat += chunkSize;
+        if (writedSinceLastMdat >= 32 * 1024) {
+            flushCurrentMdat();
+            writeNewMdat = true;
+            writedSinceLastMdat = 0;
+            commitCheckpointIfNeeded();
+            return true;
+        }
+        return false;
+    }
+
+    private void flushPendingChunks() throws Exception {
+        for (int a = 0; a < pendingChunks.size(); a++) {
+            PendingChunk chunk = pendingChunks.get(a);
+            if (chunk.count != 0) {
+                pendingChunks.set(a, obtainChunk(a));
+                completeChunks.add(chunk);
+                completeChunksBytes += chunk.data.position();
+            }
+        }
+        writeCompleteChunks(true);
+    }
+
+    private boolean writeFragmentedSampleData(int trackIndex, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo, boolean isAudio) throws Exception {
+        if (trackIndex < 0 || trackIndex >= currentMp4Movie.getTracks().size()) {
+            return false;
+        }
+        if (!fragmentHeaderWritten) {
+            createMovieBox(currentMp4Movie).getBox(output);
+            fragmentHeaderWritten = true;
+        }
+        return fragmentWriter.writeSampleData(currentMp4Movie.getTracks().get(trackIndex), byteBuf, bufferInfo, isAudio);
+    }
+
+    public long writeSampleRange(Mp4Demuxer demuxer, long position, long size) throws Exception {
+        if (fragmentWriter != null) {
+            throw new IllegalStateException("sample ranges can't be copied into a fragmented movie");
+        }
+        discardCheckpoint();
+        startMdatIfNeeded();
+        long rangeOffset = dataOffset;
+        output.transferFrom(demuxer, position, size);
+        dataOffset += size;
+        mdat.setContentSize(mdat.getContentSize() + size);
+        writedSinceLastMdat += size;
+        if (writedSinceLastMdat >= 32 * 1024) {
+            flushCurrentMdat();
+            writeNewMdat = true;
+            writedSinceLastMdat = 0;
+        }
+        return rangeOffset;
+    }
+
+    public void addSample(int trackIndex, long offset, long size, long decodeTime, int compositionOffset, boolean isSyncFrame) {
+        currentMp4Movie.addSample(trackIndex, offset, size, decodeTime, compositionOffset, isSyncFrame);
+    }
+
+    // Starts playback of a copied track at the given media time (in its time scale) instead of its first sample,
+    // or delays the track by that many units if negative. Written as an edit list.
+    public void setEditMediaTime(int trackIndex, long mediaTime) {
+        currentMp4Movie.getTracks().get(trackIndex).setEditMediaTime(mediaTime);
+    }
+
+    public int addTrack(Mp4Demuxer.TrackInfo trackInfo) {
+        if (fragmentHeaderWritten) {
+            throw new IllegalStateException("tracks can't be added after the first fragment was written");
+        }
+        discardCheckpoint();
+        return currentMp4Movie.addTrack(trackInfo);
+    }
+
     public int addTrack(MediaFormat mediaFormat, boolean isAudio) throws Exception {
-        return currentMp4Movie.addTrack(mediaFormat, isAudio);
+        if (fragmentHeaderWritten) {
+            throw new IllegalStateException("tracks can't be added after the first fragment was written");
+        }
+        if (resumedTracksUsed != null) {
+            ArrayList<Track> tracks = currentMp4Movie.getTracks();
+            for (int a = 0; a < resumedTracksUsed.length; a++) {
+                if (!resumedTracksUsed[a] && tracks.get(a).isAudio() == isAudio) {
+                    resumedTracksUsed[a] = true;
+                    return a;
+                }
+            }
+        }
+        int trackIndex = currentMp4Movie.addTrack(mediaFormat, isAudio);
+        if (checkpoint != null) {
+            checkpoint.addTrack(currentMp4Movie.getTracks().get(trackIndex));
+        }
+        return trackIndex;
     }
 
     public void finishMovie(boolean error) throws Exception {
+        if (fragmentWriter != null) {
+            if (!fragmentHeaderWritten) {
+                createMovieBox(currentMp4Movie).getBox(output);
+                fragmentHeaderWritten = true;
+            }
+            fragmentWriter.flushFragment();
+            output.close();
+            fc.close();
+            fos.close();
+            return;
+        }
+        flushPendingChunks();
         if (mdat.getContentSize() != 0) {
             flushCurrentMdat();
         }
-
-        for (Track track : currentMp4Movie.getTracks()) {
-            List<Sample> samples = track.getSamples();
-            long[] sizes = new long[samples.size()];
-            for (int i = 0; i < sizes.length; i++) {
-                sizes[i] = samples.get(i).getSize();
-            }
-            track2SampleSizes.put(track, sizes);
+        discardCheckpoint();
+
+        if (currentMp4Movie.isFastStart() && !error) {
+            long dataEndOffset = output.position();
+            output.close();
+            fc.close();
+            fos.close();
+            writeFastStartMovie(dataEndOffset);
+            return;
         }
 
         Box moov = createMovieBox(currentMp4Movie);
-        moov.getBox(fc);
-        fos.flush();
+        movieBoxSize = moov.getSize();
+        moov.getBox(output);
+        output.close();
 
         fc.close();
         fos.close();
     }
 
+    private void writeFastStartMovie(long dataEndOffset) throws Exception {
+        FileTypeBox fileTypeBox = createFileTypeBox();
+        Box moov;
+        long moovSize = 0;
+        while (true) {
+            chunkOffsetShift = moovSize;
+            moov = createMovieBox(currentMp4Movie);
+            if (moov.getSize() == moovSize) {
+                break;
+            }
+            moovSize = moov.getSize();
+        }
+        movieBoxSize = moovSize;
+
+        File cacheFile = currentMp4Movie.getCacheFile();
+        File fastStartFile = new File(cacheFile.getPath() + ".faststart");
+        RandomAccessFile input = null;
+        FileOutputStream fastStartOutput = null;
+        try {
+            input = new RandomAccessFile(cacheFile, "r");
+            fastStartOutput = new FileOutputStream(fastStartFile);
+            FileChannel inputChannel = input.getChannel();
+            FileChannel outputChannel = fastStartOutput.getChannel();
+            fileTypeBox.getBox(outputChannel);
+            moov.getBox(outputChannel);
+            long position = dataStartOffset;
+            while (position < dataEndOffset) {
+                position += inputChannel.transferTo(position, dataEndOffset - position, outputChannel);
+            }
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+            if (fastStartOutput != null) {
+                fastStartOutput.close();
+            }
+            chunkOffsetShift = 0;
+        }
+        // renameTo replaces the target in one step, so until it succeeds the cache file still has every sample
+        if (!fastStartFile.renameTo(cacheFile)) {
+            fastStartFile.delete();
+            appendMovieBox(cacheFile, dataEndOffset);
+            Log.e("tmessages", "can't replace " + cacheFile + " with faststart output, moov left at the end");
+        }
+    }
+
+    // Finishes the movie the regular way, with the moov box after the samples.
+    private void appendMovieBox(File cacheFile, long dataEndOffset) throws Exception {
+        Box moov = createMovieBox(currentMp4Movie);
+        movieBoxSize = moov.getSize();
+        RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            channel.position(dataEndOffset);
+            moov.getBox(channel);
+            channel.truncate(channel.position());
+        } finally {
+            file.close();
+        }
+    }
+
+    // Size of the moov box written by finishMovie, 0 before that and for fragmented movies.
+    public long getMovieBoxSize() {
+        return movieBoxSize;
+    }
+
+    // Write system calls made on the output so far; the faststart rewrite in finishMovie is not included.
+    public long getWriteCalls() {
+        return output != null ? output.getWriteCalls() : 0;
+    }
+
     protected FileTypeBox createFileTypeBox() {
         LinkedList<String> minorBrands = new LinkedList<>();
         minorBrands.add("isom");
         minorBrands.add("3gp4");
+        if (currentMp4Movie != null && currentMp4Movie.isFragmented()) {
+            minorBrands.add("iso5");
+        }
         return new FileTypeBox("isom", 0, minorBrands);
     }
 
@@ -211,6 +654,10 @@ public class MP4Builder {
         }
 
         public void getBox(WritableByteChannel writableByteChannel) throws IOException {
+            writableByteChannel.write(getHeader());
+        }
+
+        private ByteBuffer getHeader() {
             ByteBuffer bb = ByteBuffer.allocate(16);
             long size = getSize();
             if (isSmallBox(size)) {
@@ -225,7 +672,7 @@ public class MP4Builder {
                 IsoTypeWriter.writeUInt64(bb, size);
             }
             bb.rewind();
-            writableByteChannel.write(bb);
+            return bb;
         }
     }
 
@@ -258,7 +705,7 @@ public class MP4Builder {
         long duration = 0;
 
         for (Track track : movie.getTracks()) {
-            long tracksDuration = track.getDuration() * movieTimeScale / track.getTimeScale();
+            long tracksDuration = getPresentationDuration(track, movie) * movieTimeScale / track.getTimeScale();
             if (tracksDuration > duration) {
                 duration = tracksDuration;
             }
@@ -272,9 +719,32 @@ public class MP4Builder {
         for (Track track : movie.getTracks()) {
             movieBox.addBox(createTrackBox(track, movie));
         }
+        if (movie.isFragmented()) {
+            movieBox.addBox(createMovieExtendsBox(movie));
+        }
         return movieBox;
     }
 
+    protected MovieExtendsBox createMovieExtendsBox(Mp4Movie movie) {
+        MovieExtendsBox mvex = new MovieExtendsBox();
+        for (Track track : movie.getTracks()) {
+            TrackExtendsBox trex = new TrackExtendsBox();
+            trex.setTrackId(track.getTrackId() + 1);
+            trex.setDefaultSampleDescriptionIndex(1);
+            trex.setDefaultSampleFlags(new SampleFlags());
+            mvex.addBox(trex);
+        }
+        return mvex;
+    }
+
+    private long getTrackDuration(Track track, Mp4Movie movie) {
+        return movie.isFragmented() ? 0 : track.getDuration();
+    }
+
+    private long getPresentationDuration(Track track, Mp4Movie movie) {
+        return movie.isFragmented() ? 0 : track.getDuration() - track.getEditMediaTime();
+    }
+
     protected TrackBox createTrackBox(Track track, Mp4Movie movie) {
         TrackBox trackBox = new TrackBox();
         TrackHeaderBox tkhd = new TrackHeaderBox();
@@ -289,7 +759,7 @@ public class MP4Builder {
         }
         tkhd.setAlternateGroup(0);
         tkhd.setCreationTime(track.getCreationTime());
-        tkhd.setDuration(track.getDuration() * getTimescale(movie) / track.getTimeScale());
+        tkhd.setDuration(getPresentationDuration(track, movie) * getTimescale(movie) / track.getTimeScale());
         tkhd.setHeight(track.getHeight());
         tkhd.setWidth(track.getWidth());
         tkhd.setLayer(0);
@@ -298,12 +768,15 @@ public class MP4Builder {
         tkhd.setVolume(track.getVolume());
 
         trackBox.addBox(tkhd);
+        if (track.getEditMediaTime() != 0 && !movie.isFragmented()) {
+            trackBox.addBox(createEdts(track, movie));
+        }
 
         MediaBox mdia = new MediaBox();
         trackBox.addBox(mdia);
         MediaHeaderBox mdhd = new MediaHeaderBox();
         mdhd.setCreationTime(track.getCreationTime());
-        mdhd.setDuration(track.getDuration());
+        mdhd.setDuration(getTrackDuration(track, movie));
         mdhd.setTimescale(track.getTimeScale());
         mdhd.setLanguage("eng");
         mdia.addBox(mdhd);
@@ -331,11 +804,28 @@ public class MP4Builder {
         return trackBox;
     }
 
+    protected EditBox createEdts(Track track, Mp4Movie movie) {
+        EditBox edts = new EditBox();
+        EditListBox elst = new EditListBox();
+        long timescale = getTimescale(movie);
+        long mediaTime = track.getEditMediaTime();
+        List<EditListBox.Entry> entries = new ArrayList<>();
+        if (mediaTime < 0) {
+            entries.add(new EditListBox.Entry(elst, (-mediaTime * timescale + track.getTimeScale() / 2) / track.getTimeScale(), -1, 1));
+            mediaTime = 0;
+        }
+        entries.add(new EditListBox.Entry(elst, (track.getDuration() - mediaTime) * timescale / track.getTimeScale(), mediaTime, 1));
+        elst.setEntries(entries);
+        edts.addBox(elst);
+        return edts;
+    }
+
     protected Box createStbl(Track track) {
         SampleTableBox stbl = new SampleTableBox();
 
         createStsd(track, stbl);
         createStts(track, stbl);
+        createCtts(track, stbl);
         createStss(track, stbl);
         createStsc(track, stbl);
         createStsz(track, stbl);
@@ -349,22 +839,20 @@ public class MP4Builder {
     }
 
     protected void createStts(Track track, SampleTableBox stbl) {
-        TimeToSampleBox.Entry lastEntry = null;
-        List<TimeToSampleBox.Entry> entries = new ArrayList<>();
-
-        for (long delta : track.getSampleDurations()) {
-            if (lastEntry != null && lastEntry.getDelta() == delta) {
-                lastEntry.setCount(lastEntry.getCount() + 1);
-            } else {
-                lastEntry = new TimeToSampleBox.Entry(1, delta);
-                entries.add(lastEntry);
-            }
-        }
         TimeToSampleBox stts = new TimeToSampleBox();
-        stts.setEntries(entries);
+        stts.setEntries(track.getSampleDurations().getEntries());
         stbl.addBox(stts);
     }
 
+    protected void createCtts(Track track, SampleTableBox stbl) {
+        List<CompositionTimeToSample.Entry> entries = track.getCompositionOffsets();
+        if (entries != null && !entries.isEmpty()) {
+            CompositionTimeToSample ctts = new CompositionTimeToSample();
+            ctts.setEntries(entries);
+            stbl.addBox(ctts);
+        }
+    }
+
     protected void createStss(Track track, SampleTableBox stbl) {
         long[] syncSamples = track.getSyncSamples();
         if (syncSamples != null && syncSamples.length > 0) {
@@ -376,70 +864,30 @@ public class MP4Builder {
 
     protected void createStsc(Track track, SampleTableBox stbl) {
         SampleToChunkBox stsc = new SampleToChunkBox();
-        stsc.setEntries(new LinkedList<SampleToChunkBox.Entry>());
-
-        long lastOffset;
-        int lastChunkNumber = 1;
-        int lastSampleCount = 0;
-
-        int previousWritedChunkCount = -1;
-
-        int samplesCount = track.getSamples().size();
-        for (int a = 0; a < samplesCount; a++) {
-            Sample sample = track.getSamples().get(a);
-            long offset = sample.getOffset();
-            long size = sample.getSize();
-
-            lastOffset = offset + size;
-            lastSampleCount++;
-
-            boolean write = false;
-            if (a != samplesCount - 1) {
-                Sample nextSample = track.getSamples().get(a + 1);
-                if (lastOffset != nextSample.getOffset()) {
-                    write = true;
-                }
-            } else {
-                write = true;
-            }
-            if (write) {
-                if (previousWritedChunkCount != lastSampleCount) {
-                    stsc.getEntries().add(new SampleToChunkBox.Entry(lastChunkNumber, lastSampleCount, 1));
-                    previousWritedChunkCount = lastSampleCount;
-                }
-                lastSampleCount = 0;
-                lastChunkNumber++;
-            }
-        }
+        stsc.setEntries(track.getSamples().getSampleToChunkEntries());
         stbl.addBox(stsc);
     }
 
     protected void createStsz(Track track, SampleTableBox stbl) {
         SampleSizeBox stsz = new SampleSizeBox();
-        stsz.setSampleSizes(track2SampleSizes.get(track));
+        stsz.setSampleSizes(track.getSamples().getSizes());
         stbl.addBox(stsz);
     }
 
     protected void createStco(Track track, SampleTableBox stbl) {
-        ArrayList<Long> chunksOffsets = new ArrayList<>();
-        long lastOffset = -1;
-        for (Sample sample : track.getSamples()) {
-            long offset = sample.getOffset();
-            if (lastOffset != -1 && lastOffset != offset) {
-                lastOffset = -1;
-            }
-            if (lastOffset == -1) {
-                chunksOffsets.add(offset);
+        long[] chunkOffsets = track.getSamples().getChunkOffsets();
+        if (chunkOffsetShift != 0) {
+            for (int a = 0; a < chunkOffsets.length; a++) {
+                chunkOffsets[a] += chunkOffsetShift;
             }
-            lastOffset = offset + sample.getSize();
         }
-        long[] chunkOffsetsLong = new long[chunksOffsets.size()];
-        for (int a = 0; a < chunksOffsets.size(); a++) {
-            chunkOffsetsLong[a] = chunksOffsets.get(a);
+        ChunkOffsetBox stco;
+        if (chunkOffsets.length != 0 && chunkOffsets[chunkOffsets.length - 1] > 0xffffffffL) {
+            stco = new ChunkOffset64BitBox();
+        } else {
+            stco = new StaticChunkOffsetBox();
         }
-
-        StaticChunkOffsetBox stco = new StaticChunkOffsetBox();
-        stco.setChunkOffsets(chunkOffsetsLong);
+        stco.setChunkOffsets(chunkOffsets);
         stbl.addBox(stco);
     }
 }
@@ -0,0 +1,84 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import java.nio.ByteBuffer;
+
+@TargetApi(21)
+public class MediaCodecWrapper implements Codec {
+
+    private static HandlerThread callbackThread;
+    private MediaCodec codec;
+
+    public MediaCodecWrapper(MediaCodec mediaCodec) {
+        codec = mediaCodec;
+    }
+
+    private static synchronized Handler getCallbackHandler() {
+        if (callbackThread == null) {
+            callbackThread = new HandlerThread("CodecCallbackThread");
+            callbackThread.start();
+        }
+        return new Handler(callbackThread.getLooper());
+    }
+
+    @Override
+    public void setCallback(final Callback callback) {
+        MediaCodec.Callback codecCallback = new MediaCodec.Callback() {
+            @Override
+            public void onInputBufferAvailable(MediaCodec mediaCodec, int index) {
+                callback.onInputBufferAvailable(MediaCodecWrapper.this, index);
+            }
+
+            @Override
+            public void onOutputBufferAvailable(MediaCodec mediaCodec, int index, MediaCodec.BufferInfo info) {
+                callback.onOutputBufferAvailable(MediaCodecWrapper.this, index, info);
+            }
+
+            @Override
+            public void onError(MediaCodec mediaCodec, MediaCodec.CodecException e) {
+                callback.onError(MediaCodecWrapper.this, e);
+            }
+
+            @Override
+            public void onOutputFormatChanged(MediaCodec mediaCodec, MediaFormat format) {
+                callback.onOutputFormatChanged(MediaCodecWrapper.this, format);
+            }
+        };
+        if (Build.VERSION.SDK_INT >= 23) {
+            codec.setCallback(codecCallback, getCallbackHandler());
+        } else {
+            codec.setCallback(codecCallback);
+        }
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return codec.getInputBuffer(index);
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return codec.getOutputBuffer(index);
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        codec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+        codec.releaseOutputBuffer(index, render);
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        codec.signalEndOfInputStream();
+    }
+}
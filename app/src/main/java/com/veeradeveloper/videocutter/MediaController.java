@@ -29,6 +29,13 @@ import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MediaController {
 
@@ -39,14 +46,19 @@ public class MediaController {
     private final static int PROCESSOR_TYPE_MTK = 3;
     private final static int PROCESSOR_TYPE_SEC = 4;
     private final static int PROCESSOR_TYPE_TI = 5;
+    private final static int MAX_CONCURRENT_CONVERSIONS = 4;
+    private final static int MAX_RESUME_ATTEMPTS = 3;
+    private final static long PROGRESS_INTERVAL_MS = 250;
     private final Object videoConvertSync = new Object();
 
-    private ArrayList<VideoEditorActivity.DelayedMessage> videoConvertQueue = new ArrayList<>();
-    private boolean cancelCurrentVideoConversion = false;
-    private boolean videoConvertFirstWrite = true;
+    private ThreadPoolExecutor videoConvertExecutor;
+    private ArrayList<ConvertJob> videoConvertJobs = new ArrayList<>();
+    private AtomicInteger runningConversions = new AtomicInteger();
+    private CopyOnWriteArrayList<ConvertJob.ProgressListener> progressListeners = new CopyOnWriteArrayList<>();
+    private CopyOnWriteArrayList<ConvertJob.MetricsListener> metricsListeners = new CopyOnWriteArrayList<>();
+    private boolean progressPublisherScheduled;
 
     private static volatile MediaController Instance = null;
-    private static  boolean isVideoTrimmed = false;
 
     public static MediaController getInstance() {
         MediaController localInstance = Instance;
@@ -64,28 +76,180 @@ public class MediaController {
     public MediaController() {
     }
 
-    private  View mView;
-    private static Context ctx;
-    public void scheduleVideoConvert(VideoEditorActivity.DelayedMessage messageObject, View view, Context context) {
-        videoConvertQueue.add(messageObject);
-        mView = view;
-        ctx = context;
-        if (videoConvertQueue.size() == 1) {
-            startVideoConvertFromQueue();
+    public ConvertJob scheduleVideoConvert(VideoEditorActivity.DelayedMessage messageObject, View view, Context context) {
+        return scheduleVideoConvert(messageObject, view, context, ConvertJob.PRIORITY_NORMAL);
+    }
+
+    public ConvertJob scheduleVideoConvert(final VideoEditorActivity.DelayedMessage messageObject, View view, Context context, int priority) {
+        messageObject.view = view;
+        if (context != null) {
+            try {
+                ProgressDialog progressDialog = ProgressDialog.show(context, "Please wait ...", "Trimming the video ...", true);
+                progressDialog.setCanceledOnTouchOutside(false);
+                progressDialog.setCancelable(false);
+                progressDialog.show();
+                messageObject.progressDialog = progressDialog;
+            } catch (Exception e) {
+                Log.e("Vaishali", "Exception in initialisising progress dialog == "+e.toString());
+            }
+        }
+        final ConvertProgress progress = new ConvertProgress();
+        final ConvertMetrics metrics = new ConvertMetrics();
+        final ConvertJob job = new ConvertJob(messageObject, progress, metrics, priority, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return convertVideo(messageObject, progress, metrics);
+            }
+        }) {
+            // Not done(): a canceled FutureTask calls that right away, while convertVideo is still unwinding on this
+            // thread. Here call() has returned (or never started), so the output and the metrics are final.
+            @Override
+            public void run() {
+                super.run();
+                synchronized (videoConvertSync) {
+                    videoConvertJobs.remove(this);
+                }
+                final ConvertJob finishedJob = this;
+                AndroidUtilities.runOnUIThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        publishProgress(finishedJob);
+                        for (ConvertJob.MetricsListener listener : metricsListeners) {
+                            listener.onConversionMetrics(finishedJob, finishedJob.getMetrics());
+                        }
+                    }
+                });
+            }
+        };
+        synchronized (videoConvertSync) {
+            videoConvertJobs.add(job);
+            if (!progressPublisherScheduled) {
+                progressPublisherScheduled = true;
+                AndroidUtilities.runOnUIThread(progressPublisher, PROGRESS_INTERVAL_MS);
+            }
         }
+        getVideoConvertExecutor().execute(job);
+        return job;
+    }
+
+    // Listeners are called on the UI thread every PROGRESS_INTERVAL_MS for every queued or running job,
+    // and once more when a job completes.
+    public void addProgressListener(ConvertJob.ProgressListener listener) {
+        progressListeners.addIfAbsent(listener);
     }
 
-    private void startVideoConvertFromQueue() {
-        if (!videoConvertQueue.isEmpty()) {
+    public void removeProgressListener(ConvertJob.ProgressListener listener) {
+        progressListeners.remove(listener);
+    }
+
+    // Called on the UI thread with the stage timings of every job once it completes, canceled or failed jobs included.
+    public void addMetricsListener(ConvertJob.MetricsListener listener) {
+        metricsListeners.addIfAbsent(listener);
+    }
+
+    public void removeMetricsListener(ConvertJob.MetricsListener listener) {
+        metricsListeners.remove(listener);
+    }
+
+    private final Runnable progressPublisher = new Runnable() {
+        @Override
+        public void run() {
+            ConvertJob[] jobs;
             synchronized (videoConvertSync) {
-                cancelCurrentVideoConversion = false;
+                jobs = videoConvertJobs.toArray(new ConvertJob[videoConvertJobs.size()]);
+                progressPublisherScheduled = jobs.length != 0;
+            }
+            for (int a = 0; a < jobs.length; a++) {
+                publishProgress(jobs[a]);
+            }
+            if (jobs.length != 0) {
+                AndroidUtilities.runOnUIThread(this, PROGRESS_INTERVAL_MS);
             }
-            VideoEditorActivity.DelayedMessage messageObject = videoConvertQueue.get(0);
+        }
+    };
+
+    private void publishProgress(ConvertJob job) {
+        ConvertProgress progress = job.getProgress();
+        for (ConvertJob.ProgressListener listener : progressListeners) {
+            listener.onProgress(job, progress);
+        }
+        float fraction = progress.getFraction();
+        ProgressDialog progressDialog = ((VideoEditorActivity.DelayedMessage) job.getMessageObject()).progressDialog;
+        if (progressDialog != null && progressDialog.isShowing() && fraction >= 0 && !progress.isFinished()) {
+            progressDialog.setMessage("Trimming the video ... " + (int) (fraction * 100) + "%");
+        }
+    }
 
-            VideoConvertRunnable.runConversion(messageObject);
+    public void cancelVideoConvert(VideoEditorActivity.DelayedMessage messageObject) {
+        synchronized (videoConvertSync) {
+            for (int a = 0; a < videoConvertJobs.size(); a++) {
+                ConvertJob job = videoConvertJobs.get(a);
+                if (job.getMessageObject() == messageObject) {
+                    job.cancel(false);
+                }
+            }
+        }
+    }
+
+    public void cancelAllVideoConverts() {
+        synchronized (videoConvertSync) {
+            for (int a = 0; a < videoConvertJobs.size(); a++) {
+                videoConvertJobs.get(a).cancel(false);
+            }
+        }
+    }
+
+    private ThreadPoolExecutor getVideoConvertExecutor() {
+        synchronized (videoConvertSync) {
+            if (videoConvertExecutor == null) {
+                int threads = getMaxConcurrentConversions();
+                Tracer.trace(Tracer.LEVEL_INFO, "video convert threads", threads);
+                videoConvertExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private int threadsCount = 0;
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "VideoConvertRunnable" + (++threadsCount));
+                    }
+                });
+                videoConvertExecutor.allowCoreThreadTimeOut(true);
+            }
+            return videoConvertExecutor;
         }
     }
 
+    @SuppressLint("NewApi")
+    private static int getMaxConcurrentConversions() {
+        if (Build.VERSION.SDK_INT < 23) {
+            return 1;
+        }
+        int encoders = 0;
+        int decoders = 0;
+        try {
+            MediaCodecInfo codecInfo = selectCodec(MIME_TYPE);
+            if (codecInfo != null) {
+                encoders = codecInfo.getCapabilitiesForType(MIME_TYPE).getMaxSupportedInstances();
+            }
+            int numCodecs = MediaCodecList.getCodecCount();
+            for (int i = 0; i < numCodecs && decoders == 0; i++) {
+                MediaCodecInfo info = MediaCodecList.getCodecInfoAt(i);
+                if (info.isEncoder()) {
+                    continue;
+                }
+                for (String type : info.getSupportedTypes()) {
+                    if (type.equalsIgnoreCase(MIME_TYPE)) {
+                        decoders = info.getCapabilitiesForType(MIME_TYPE).getMaxSupportedInstances();
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Log.e("tmessages", e.toString());
+        }
+        int limit = Math.min(Math.min(encoders, decoders), Runtime.getRuntime().availableProcessors());
+        return Math.max(1, Math.min(limit, MAX_CONCURRENT_CONVERSIONS));
+    }
+
     @SuppressLint("NewApi")
     public static MediaCodecInfo selectCodec(String mimeType) {
         int numCodecs = MediaCodecList.getCodecCount();
@@ -159,9 +323,9 @@ public class MediaController {
     }
 
     private void didWriteData(final VideoEditorActivity.DelayedMessage messageObject, final File file, final boolean last, final boolean error) {
-        final boolean firstWrite = videoConvertFirstWrite;
+        final boolean firstWrite = messageObject.firstWrite;
         if (firstWrite) {
-            videoConvertFirstWrite = false;
+            messageObject.firstWrite = false;
         }
         AndroidUtilities.runOnUIThread(new Runnable() {
             @Override
@@ -171,147 +335,591 @@ public class MediaController {
                     if (firstWrite) {
                     }
                 }
-                if (error || last) {
-                    synchronized (videoConvertSync) {
-                        cancelCurrentVideoConversion = false;
-                    }
-                    videoConvertQueue.remove(messageObject);
-                    startVideoConvertFromQueue();
-                }
             }
         });
     }
 
     @TargetApi(16)
-    private long readAndWriteTrack(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, MP4Builder mediaMuxer, MediaCodec.BufferInfo info, long start, long end, File file, boolean isAudio) throws Exception {
+    private long readAndWriteTrack(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, AsyncMP4Builder mediaMuxer, MediaCodec.BufferInfo info, long start, long end, File file, boolean isAudio) throws Exception {
         int trackIndex = selectTrack(extractor, isAudio);
         if (trackIndex >= 0) {
             extractor.selectTrack(trackIndex);
             MediaFormat trackFormat = extractor.getTrackFormat(trackIndex);
             int muxerTrackIndex = mediaMuxer.addTrack(trackFormat, isAudio);
-            int maxBufferSize = trackFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
-            boolean inputDone = false;
-            if (start > 0) {
-                extractor.seekTo(start, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
-            } else {
-                extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
-            }
-            ByteBuffer buffer = ByteBuffer.allocateDirect(maxBufferSize);
-            long startTime = -1;
+            long startTime = copyTrackSamples(messageObject, extractor, mediaMuxer, info, trackIndex, muxerTrackIndex, trackFormat, start, end, file, isAudio);
+            extractor.unselectTrack(trackIndex);
+            return startTime;
+        }
+        return -1;
+    }
+
+    @TargetApi(16)
+    private long readAndWriteTrack(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, AsyncMP4Builder mediaMuxer, MediaCodec.BufferInfo info, CutList cutList, File file, boolean isAudio) throws Exception {
+        int trackIndex = selectTrack(extractor, isAudio);
+        if (trackIndex >= 0) {
+            extractor.selectTrack(trackIndex);
+            MediaFormat trackFormat = extractor.getTrackFormat(trackIndex);
+            int muxerTrackIndex = mediaMuxer.addTrack(trackFormat, isAudio);
+            long startTime = copyTrackSegments(messageObject, extractor, mediaMuxer, info, trackIndex, muxerTrackIndex, trackFormat, cutList, file, isAudio);
+            extractor.unselectTrack(trackIndex);
+            return startTime;
+        }
+        return -1;
+    }
 
-            checkConversionCanceled();
-            long lastTimestamp = -100;
+    // Moves every segment start back to the sync sample the copy of that segment has to begin with.
+    @TargetApi(16)
+    private CutList alignToSyncSamples(MediaExtractor extractor, CutList cutList) {
+        int trackIndex = selectTrack(extractor, false);
+        if (trackIndex < 0) {
+            return cutList;
+        }
+        extractor.selectTrack(trackIndex);
+        CutList aligned = new CutList();
+        for (int a = 0; a < cutList.getSegmentsCount(); a++) {
+            extractor.seekTo(cutList.getStart(a), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            long syncTime = extractor.getSampleTime();
+            aligned.addSegment(syncTime >= 0 && syncTime <= cutList.getStart(a) ? syncTime : cutList.getStart(a), cutList.getEnd(a));
+        }
+        extractor.unselectTrack(trackIndex);
+        return aligned;
+    }
 
-            while (!inputDone) {
-                checkConversionCanceled();
+    @TargetApi(16)
+    private long copyTrackSegments(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, AsyncMP4Builder mediaMuxer, MediaCodec.BufferInfo info, int trackIndex, int muxerTrackIndex, MediaFormat trackFormat, CutList cutList, File file, boolean isAudio) throws Exception {
+        int maxBufferSize = trackFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(maxBufferSize);
+        long startTime = -1;
+        long lastTimestamp = -100;
 
-                boolean eof = false;
+        for (int segment = 0; segment < cutList.getSegmentsCount(); segment++) {
+            checkConversionCanceled(messageObject);
+            extractor.seekTo(cutList.getStart(segment), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            boolean segmentDone = false;
+            while (!segmentDone) {
+                checkConversionCanceled(messageObject);
                 int index = extractor.getSampleTrackIndex();
                 if (index == trackIndex) {
                     info.size = extractor.readSampleData(buffer, 0);
-                    if (info.size >= 0) {
-                        info.presentationTimeUs = extractor.getSampleTime();
-                    } else {
-                        info.size = 0;
-                        eof = true;
+                    if (info.size < 0) {
+                        return startTime;
                     }
-
-                    if (info.size > 0 && !eof) {
-                        if (start > 0 && startTime == -1) {
-                            startTime = info.presentationTimeUs;
-                        }
-                        if (end < 0 || info.presentationTimeUs < end) {
-                            if (info.presentationTimeUs > lastTimestamp) {
-                                info.offset = 0;
-                                info.flags = extractor.getSampleFlags();
-                                if (mediaMuxer.writeSampleData(muxerTrackIndex, buffer, info, isAudio)) {
-                                    didWriteData(messageObject, file, false, false);
-                                }
+                    long sampleTime = extractor.getSampleTime();
+                    if (!cutList.isBeforeEnd(segment, sampleTime)) {
+                        segmentDone = true;
+                    } else if (info.size > 0 && sampleTime >= cutList.getStart(segment)) {
+                        info.presentationTimeUs = cutList.getOutputTime(segment, sampleTime);
+                        if (info.presentationTimeUs > lastTimestamp) {
+                            if (startTime == -1) {
+                                startTime = sampleTime;
+                            }
+                            info.offset = 0;
+                            info.flags = extractor.getSampleFlags();
+                            if (mediaMuxer.writeSampleData(muxerTrackIndex, buffer, info, isAudio)) {
+                                didWriteData(messageObject, file, false, false);
                             }
                             lastTimestamp = info.presentationTimeUs;
-                        } else {
-                            eof = true;
                         }
                     }
-                    if (!eof) {
+                    if (!segmentDone) {
                         extractor.advance();
                     }
                 } else if (index == -1) {
-                    eof = true;
+                    return startTime;
                 } else {
                     extractor.advance();
                 }
-                if (eof) {
-                    inputDone = true;
+            }
+        }
+        return startTime;
+    }
+
+    @TargetApi(16)
+    private long copyTrackSamples(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, AsyncMP4Builder mediaMuxer, MediaCodec.BufferInfo info, int trackIndex, int muxerTrackIndex, MediaFormat trackFormat, long start, long end, File file, boolean isAudio) throws Exception {
+        int maxBufferSize = trackFormat.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE);
+        boolean inputDone = false;
+        if (start > 0) {
+            extractor.seekTo(start, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        } else {
+            extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(maxBufferSize);
+        long startTime = -1;
+
+        checkConversionCanceled(messageObject);
+        long lastTimestamp = -100;
+
+        while (!inputDone) {
+            checkConversionCanceled(messageObject);
+
+            boolean eof = false;
+            int index = extractor.getSampleTrackIndex();
+            if (index == trackIndex) {
+                info.size = extractor.readSampleData(buffer, 0);
+                if (info.size >= 0) {
+                    info.presentationTimeUs = extractor.getSampleTime();
+                } else {
+                    info.size = 0;
+                    eof = true;
+                }
+
+                if (info.size > 0 && !eof) {
+                    if (start > 0 && startTime == -1) {
+                        startTime = info.presentationTimeUs;
+                    }
+                    if (end < 0 || info.presentationTimeUs < end) {
+                        if (info.presentationTimeUs > lastTimestamp) {
+                            info.offset = 0;
+                            info.flags = extractor.getSampleFlags();
+                            if (mediaMuxer.writeSampleData(muxerTrackIndex, buffer, info, isAudio)) {
+                                didWriteData(messageObject, file, false, false);
+                            }
+                        }
+                        lastTimestamp = info.presentationTimeUs;
+                    } else {
+                        eof = true;
+                    }
                 }
+                if (!eof) {
+                    extractor.advance();
+                }
+            } else if (index == -1) {
+                eof = true;
+            } else {
+                extractor.advance();
+            }
+            if (eof) {
+                inputDone = true;
             }
+        }
+
+        return startTime;
+    }
 
+    @TargetApi(18)
+    private long smartCutVideoTrack(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, AsyncMP4Builder mediaMuxer, MediaCodec.BufferInfo info, long start, long end, int bitrate, File file) throws Exception {
+        int trackIndex = selectTrack(extractor, false);
+        if (trackIndex < 0) {
+            return -1;
+        }
+        extractor.selectTrack(trackIndex);
+        extractor.seekTo(start, MediaExtractor.SEEK_TO_NEXT_SYNC);
+        long nextSyncTime = extractor.getSampleTrackIndex() == trackIndex ? extractor.getSampleTime() : -1;
+        extractor.unselectTrack(trackIndex);
+        if (nextSyncTime == start) {
+            return readAndWriteTrack(messageObject, extractor, mediaMuxer, info, start, end, file, false);
+        }
+
+        extractor.selectTrack(trackIndex);
+        MediaFormat trackFormat = extractor.getTrackFormat(trackIndex);
+        int[] muxerTrackIndex = new int[]{-5};
+        boolean copyTail = nextSyncTime != -1 && (end < 0 || nextSyncTime < end);
+        long headEnd = copyTail ? nextSyncTime : end;
+        Tracer.trace(Tracer.LEVEL_INFO, "smart cut start, re-encode until", start, headEnd);
+        long videoTime = reencodeVideoRange(messageObject, extractor, mediaMuxer, info, trackIndex, muxerTrackIndex, trackFormat, start, headEnd, bitrate, file);
+        if (muxerTrackIndex[0] == -5) {
+            // the encoder can't reproduce the source parameter sets, so the head would not match the track's avcC
             extractor.unselectTrack(trackIndex);
-            return startTime;
+            Tracer.trace(Tracer.LEVEL_INFO, "smart cut parameter sets differ, copying from the previous sync sample");
+            return readAndWriteTrack(messageObject, extractor, mediaMuxer, info, start, end, file, false);
         }
-        return -1;
+        if (copyTail) {
+            long copyTime = copyTrackSamples(messageObject, extractor, mediaMuxer, info, trackIndex, muxerTrackIndex[0], trackFormat, nextSyncTime, end, file, false);
+            if (videoTime == -1) {
+                videoTime = copyTime;
+            }
+        }
+        extractor.unselectTrack(trackIndex);
+        return videoTime;
     }
 
-    private static ProgressDialog progressDialog = null;
+    // Re-encodes [start, end) at the source size. The track is added to the muxer, with the source format, only if
+    // the encoder's SPS and PPS are byte for byte the source ones, so one avc1 sample entry describes both the head
+    // and the copied GOPs. Otherwise nothing is written, muxerTrackIndex stays -5 and the caller falls back to a copy.
+
+    @TargetApi(18)
+    private long reencodeVideoRange(final VideoEditorActivity.DelayedMessage messageObject, MediaExtractor extractor, AsyncMP4Builder mediaMuxer, MediaCodec.BufferInfo info, int trackIndex, int[] muxerTrackIndex, MediaFormat inputFormat, long start, long end, int bitrate, File file) throws Exception {
+        MediaCodec decoder = null;
+        MediaCodec encoder = null;
+        InputSurface inputSurface = null;
+        OutputSurface outputSurface = null;
+        long videoTime = -1;
+        try {
+            MediaFormat outputFormat = MediaFormat.createVideoFormat(MIME_TYPE, inputFormat.getInteger(MediaFormat.KEY_WIDTH), inputFormat.getInteger(MediaFormat.KEY_HEIGHT));
+            outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitrate != 0 ? bitrate : 921600);
+            outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, inputFormat.containsKey(MediaFormat.KEY_FRAME_RATE) ? inputFormat.getInteger(MediaFormat.KEY_FRAME_RATE) : 25);
+            outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 10);
+            if (inputFormat.containsKey("profile")) {
+                outputFormat.setInteger("profile", inputFormat.getInteger("profile"));
+            }
+            if (inputFormat.containsKey("level")) {
+                outputFormat.setInteger("level", inputFormat.getInteger("level"));
+            }
+            encoder = MediaCodec.createEncoderByType(MIME_TYPE);
+            encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            inputSurface = new InputSurface(encoder.createInputSurface());
+            inputSurface.makeCurrent();
+            encoder.start();
+            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+            outputSurface = new OutputSurface();
+            decoder.configure(inputFormat, outputSurface.getSurface(), null, 0);
+            decoder.start();
 
-    private static class VideoConvertRunnable implements Runnable {
+            extractor.seekTo(start, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
 
-        private VideoEditorActivity.DelayedMessage messageObject;
+            final int TIMEOUT_USEC = 2500;
+            ByteBuffer[] decoderInputBuffers = null;
+            ByteBuffer[] encoderOutputBuffers = null;
+            if (Build.VERSION.SDK_INT < 21) {
+                decoderInputBuffers = decoder.getInputBuffers();
+                encoderOutputBuffers = encoder.getOutputBuffers();
+            }
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean outputDone = false;
 
-        private VideoConvertRunnable(VideoEditorActivity.DelayedMessage message) {
-            messageObject = message;
+            while (!outputDone) {
+                checkConversionCanceled(messageObject);
+                if (!inputDone) {
+                    int inputBufIndex = decoder.dequeueInputBuffer(TIMEOUT_USEC);
+                    if (inputBufIndex >= 0) {
+                        ByteBuffer inputBuf;
+                        if (Build.VERSION.SDK_INT < 21) {
+                            inputBuf = decoderInputBuffers[inputBufIndex];
+                        } else {
+                            inputBuf = decoder.getInputBuffer(inputBufIndex);
+                        }
+                        boolean eof = extractor.getSampleTrackIndex() != trackIndex;
+                        if (!eof && end > 0 && extractor.getSampleTime() >= end && (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                            eof = true;
+                        }
+                        int chunkSize = eof ? -1 : extractor.readSampleData(inputBuf, 0);
+                        if (chunkSize < 0) {
+                            decoder.queueInputBuffer(inputBufIndex, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            decoder.queueInputBuffer(inputBufIndex, 0, chunkSize, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                boolean decoderOutputAvailable = !decoderDone;
+                boolean encoderOutputAvailable = true;
+                while (decoderOutputAvailable || encoderOutputAvailable) {
+                    checkConversionCanceled(messageObject);
+                    int encoderStatus = encoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+                    if (encoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        encoderOutputAvailable = false;
+                    } else if (encoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                        if (Build.VERSION.SDK_INT < 21) {
+                            encoderOutputBuffers = encoder.getOutputBuffers();
+                        }
+                    } else if (encoderStatus == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                        MediaFormat newFormat = encoder.getOutputFormat();
+                        ByteBuffer sourceParameterSets = getParameterSets(inputFormat);
+                        if (sourceParameterSets == null || !sourceParameterSets.equals(getParameterSets(newFormat))) {
+                            return -1;
+                        }
+                        muxerTrackIndex[0] = mediaMuxer.addTrack(inputFormat, false);
+                    } else if (encoderStatus < 0) {
+                        throw new RuntimeException("unexpected result from encoder.dequeueOutputBuffer: " + encoderStatus);
+                    } else {
+                        ByteBuffer encodedData;
+                        if (Build.VERSION.SDK_INT < 21) {
+                            encodedData = encoderOutputBuffers[encoderStatus];
+                        } else {
+                            encodedData = encoder.getOutputBuffer(encoderStatus);
+                        }
+                        if (encodedData == null) {
+                            throw new RuntimeException("encoderOutputBuffer " + encoderStatus + " was null");
+                        }
+                        if (info.size > 1 && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                            if (muxerTrackIndex[0] == -5) {
+                                throw new RuntimeException("encoder output before its format");
+                            }
+                            if (mediaMuxer.writeSampleData(muxerTrackIndex[0], encodedData, info, false)) {
+                                didWriteData(messageObject, file, false, false);
+                            }
+                        }
+                        outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                        encoder.releaseOutputBuffer(encoderStatus, false);
+                    }
+                    if (encoderStatus != MediaCodec.INFO_TRY_AGAIN_LATER) {
+                        continue;
+                    }
+
+                    if (!decoderDone) {
+                        int decoderStatus = decoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+                        if (decoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                            decoderOutputAvailable = false;
+                        } else if (decoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED || decoderStatus == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                            continue;
+                        } else if (decoderStatus < 0) {
+                            throw new RuntimeException("unexpected result from decoder.dequeueOutputBuffer: " + decoderStatus);
+                        } else {
+                            boolean doRender = info.size != 0 && info.presentationTimeUs >= start;
+                            if (end > 0 && info.presentationTimeUs >= end) {
+                                inputDone = true;
+                                doRender = false;
+                                info.flags |= MediaCodec.BUFFER_FLAG_END_OF_STREAM;
+                            }
+                            if (doRender && videoTime == -1) {
+                                videoTime = info.presentationTimeUs;
+                            }
+                            decoder.releaseOutputBuffer(decoderStatus, doRender);
+                            if (doRender) {
+                                outputSurface.awaitNewImage();
+                                outputSurface.drawImage(false);
+                                inputSurface.setPresentationTime(info.presentationTimeUs * 1000);
+                                inputSurface.swapBuffers();
+                            }
+                            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                                decoderDone = true;
+                                decoderOutputAvailable = false;
+                                encoder.signalEndOfInputStream();
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (outputSurface != null) {
+                outputSurface.release();
+            }
+            if (inputSurface != null) {
+                inputSurface.release();
+            }
+            if (decoder != null) {
+                decoder.stop();
+                decoder.release();
+            }
+            if (encoder != null) {
+                encoder.stop();
+                encoder.release();
+            }
         }
+        return videoTime;
+    }
 
-        @Override
-        public void run() {
-            MediaController.getInstance().convertVideo(messageObject);
+    private static File getSplitFile(File cacheFile, int part) {
+        String name = cacheFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot) + "_" + part + name.substring(dot);
+        } else {
+            name = name + "_" + part;
+        }
+        return new File(cacheFile.getParentFile(), name);
+    }
+
+    private boolean splitVideo(final VideoEditorActivity.DelayedMessage messageObject, File inputFile, File cacheFile, int rotationValue, int resultWidth, int resultHeight) {
+        Mp4Demuxer demuxer = openDemuxer(inputFile);
+        if (demuxer == null) {
+            return false;
+        }
+        long[] splitTimes = messageObject.videoEditedInfo.splitTimes;
+        Mp4Movie[] movies = new Mp4Movie[splitTimes.length + 1];
+        for (int a = 0; a < movies.length; a++) {
+            movies[a] = new Mp4Movie();
+            movies[a].setCacheFile(getSplitFile(cacheFile, a));
+            movies[a].setRotation(rotationValue);
+            movies[a].setSize(resultWidth, resultHeight);
+        }
+        long[] partStartTimes = null;
+        try {
+            checkConversionCanceled(messageObject);
+            partStartTimes = new Mp4Splitter(demuxer).split(splitTimes, movies);
+        } catch (Exception e) {
+            Log.e("tmessages", "split failed: " + e);
+        } finally {
+            try {
+                demuxer.close();
+            } catch (Exception e) {
+                Log.e("tmessages", e.toString());
+            }
+        }
+        final boolean success = partStartTimes != null;
+        int partsCount = 0;
+        for (int a = 0; a < movies.length; a++) {
+            File file = movies[a].getCacheFile();
+            if (!success && file.exists()) {
+                file.delete();
+            } else if (success && partStartTimes[a] != -1) {
+                partsCount++;
+            }
         }
+        final int parts = partsCount;
+        messageObject.view.post(new Runnable() {
+            @Override
+            public void run() {
+                if (messageObject.progressDialog != null) {
+                    messageObject.progressDialog.dismiss();
+                }
+                if (success) {
+                    Toast.makeText(MyApplication.applicationContext, "Split video into " + parts + " parts", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(MyApplication.applicationContext, "Error while splitting the video", Toast.LENGTH_LONG).show();
+                }
+            }
+        });
+        return success;
+    }
 
-        public static void runConversion(final VideoEditorActivity.DelayedMessage  obj) {
+    // Joins the clips without re-encoding. Returns false without creating the output if their codec
+    // configurations differ; nothing re-encodes such clips yet, the caller has to convert them first.
+    public boolean concatVideos(ArrayList<File> inputs, File output) throws Exception {
+        long duration = Mp4Concatenator.concat(inputs, output);
+        if (duration < 0) {
+            Log.e("tmessages", "can't concat without re-encoding, codec configurations differ");
+            return false;
+        }
+        Tracer.trace(Tracer.LEVEL_INFO, "concat clips, duration", inputs.size(), duration);
+        return true;
+    }
 
-            if (ctx != null) {
+    private static Mp4Demuxer openDemuxer(File file) {
+        Mp4Demuxer demuxer = null;
+        try {
+            demuxer = new Mp4Demuxer(file);
+            if (demuxer.getTrack(false) != null) {
+                return demuxer;
+            }
+            demuxer.close();
+        } catch (Exception e) {
+            Log.e("tmessages", "can't demux " + file + ": " + e);
+            if (demuxer != null) {
                 try {
-                    progressDialog = ProgressDialog.show(ctx, "Please wait ...", "Trimming the video ...", true);
-                    progressDialog.setCanceledOnTouchOutside(false);
-                    progressDialog.setCancelable(false);
-                    progressDialog.show();
-                } catch (Exception e) {
-                    Log.e("Vaishali", "Exception in initialisising progress dialog == "+e.toString());
+                    demuxer.close();
+                } catch (Exception e2) {
+                    Log.e("tmessages", e2.toString());
                 }
             }
+        }
+        return null;
+    }
 
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        VideoConvertRunnable wrapper = new VideoConvertRunnable(obj);
-                        Thread th = new Thread(wrapper, "VideoConvertRunnable");
-                        th.start();
-                        th.join();
-                    } catch (Exception e) {
-                        Log.e("tmessages", e.toString());
-                    }
-                }
-            }).start();
+    private static ByteBuffer getParameterSets(MediaFormat format) {
+        ByteBuffer sps = format.getByteBuffer("csd-0");
+        ByteBuffer pps = format.getByteBuffer("csd-1");
+        if (sps == null || pps == null) {
+            return null;
         }
+        ByteBuffer parameterSets = ByteBuffer.allocate(sps.remaining() + pps.remaining());
+        parameterSets.put(sps.duplicate());
+        parameterSets.put(pps.duplicate());
+        parameterSets.flip();
+        return parameterSets;
     }
 
-    private void checkConversionCanceled() throws Exception {
-        boolean cancelConversion;
-        synchronized (videoConvertSync) {
-            cancelConversion = cancelCurrentVideoConversion;
+    // The audio track of the input file, opened on the copier thread.
+    @TargetApi(16)
+    private class FileAudioCopier extends AudioTrackCopier {
+
+        private File inputFile;
+        private MediaExtractor extractor;
+
+        private FileAudioCopier(VideoEditorActivity.DelayedMessage message, File input, AsyncMP4Builder muxer, long startTime, long endTime, File cacheFile) {
+            super(muxer, startTime, endTime, new ConvertListener(message, cacheFile));
+            inputFile = input;
+        }
+
+        private FileAudioCopier(VideoEditorActivity.DelayedMessage message, File input, AsyncMP4Builder muxer, CutList list, File cacheFile) {
+            super(muxer, list, new ConvertListener(message, cacheFile));
+            inputFile = input;
+        }
+
+        @Override
+        protected void openSource() throws Exception {
+            extractor = new MediaExtractor();
+            extractor.setDataSource(inputFile.toString());
+            int trackIndex = selectTrack(extractor, true);
+            if (trackIndex >= 0) {
+                extractor.selectTrack(trackIndex);
+                setSource(new MediaExtractorWrapper(extractor), trackIndex, extractor.getTrackFormat(trackIndex));
+            }
+        }
+
+        @Override
+        protected void releaseSource() {
+            if (extractor != null) {
+                extractor.release();
+            }
+        }
+    }
+
+    private class ConvertListener implements AudioTrackCopier.Listener {
+
+        protected VideoEditorActivity.DelayedMessage messageObject;
+        protected File cacheFile;
+
+        private ConvertListener(VideoEditorActivity.DelayedMessage message, File file) {
+            messageObject = message;
+            cacheFile = file;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return messageObject.canceled || Thread.currentThread().isInterrupted();
+        }
+
+        @Override
+        public void onDataWritten() {
+            didWriteData(messageObject, cacheFile, false, false);
+        }
+    }
+
+    private class TranscodeListener extends ConvertListener implements CodecPipeline.Listener {
+
+        private File inputFile;
+        private AsyncMP4Builder mediaMuxer;
+        private CutList cutList;
+        private long endTime;
+        private boolean startAudio;
+        private AudioTrackCopier audioCopier;
+
+        private TranscodeListener(VideoEditorActivity.DelayedMessage message, File input, AsyncMP4Builder muxer, CutList list, long end, File file, boolean startAudioCopier) {
+            super(message, file);
+            inputFile = input;
+            mediaMuxer = muxer;
+            cutList = list;
+            endTime = end;
+            startAudio = startAudioCopier;
+        }
+
+        @Override
+        public void onVideoStarted(long presentationTimeUs) {
+            if (!startAudio) {
+                return;
+            }
+            if (cutList != null) {
+                audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, cutList, cacheFile);
+            } else {
+                audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, presentationTimeUs, endTime, cacheFile);
+            }
+            audioCopier.start();
         }
-        if (cancelConversion) {
+    }
+
+    private void checkConversionCanceled(VideoEditorActivity.DelayedMessage messageObject) throws Exception {
+        if (messageObject.canceled || Thread.currentThread().isInterrupted()) {
             throw new RuntimeException("canceled conversion");
         }
     }
 
     @TargetApi(16)
-    private boolean convertVideo(final VideoEditorActivity.DelayedMessage messageObject) {
+    private boolean convertVideo(final VideoEditorActivity.DelayedMessage messageObject, ConvertProgress progress, ConvertMetrics metrics) {
        Log.e("Vaishali", "Start convertVideo");
         String videoPath = messageObject.videoEditedInfo.originalPath;
         long startTime = messageObject.videoEditedInfo.startTime;
         long endTime = messageObject.videoEditedInfo.endTime;
+        CutList cutList = messageObject.videoEditedInfo.getCutList();
+        boolean multiSegment = cutList.getSegmentsCount() > 1;
+        if (multiSegment) {
+            startTime = cutList.getStart(0);
+            endTime = cutList.getEnd(cutList.getSegmentsCount() - 1);
+        }
         int resultWidth = messageObject.videoEditedInfo.resultWidth;
         int resultHeight = messageObject.videoEditedInfo.resultHeight;
         int rotationValue = messageObject.videoEditedInfo.rotationValue;
@@ -319,9 +927,6 @@ public class MediaController {
         int originalHeight = messageObject.videoEditedInfo.originalHeight;
         int bitrate = messageObject.videoEditedInfo.bitrate;
         int rotateRender = 0;
-        int randono = new Random().nextInt();
-
-        final File cacheFile = new File(Environment.getExternalStorageDirectory().getAbsolutePath()+"/DCIM/"+"ashish"+ randono + ".mp4");
 
        Log.e("Vaishali", "Start Time == " + startTime + "\n endTime == " + endTime + " \nResult height == " + resultHeight + " \nResult Width == " + resultWidth + "\nRotation Value == " + rotationValue
                + "\n Original Width == " + originalWidth + "\n Original Heoght ==" + originalHeight + "\n Bitrate == " + bitrate);
@@ -352,26 +957,64 @@ public class MediaController {
         }
 
         SharedPreferences preferences = MyApplication.applicationContext.getSharedPreferences("videoconvert", Activity.MODE_PRIVATE);
-        boolean isPreviousOk = preferences.getBoolean("isPreviousOk", true);
+        boolean isPreviousOk = runningConversions.getAndIncrement() != 0 || preferences.getBoolean("isPreviousOk", true);
         preferences.edit().putBoolean("isPreviousOk", false).commit();
 
+        boolean resumable = !multiSegment && resultWidth != 0 && resultHeight != 0 && (resultWidth != originalWidth || resultHeight != originalHeight) && Build.VERSION.SDK_INT >= 18;
+        String checkpointKey = "checkpoint_" + messageObject.videoEditedInfo.getString();
+        final File cacheFile;
+        if (resumable) {
+            cacheFile = getConversionFile(preferences, checkpointKey);
+        } else {
+            cacheFile = createConversionFile();
+        }
+        boolean resuming = resumable && getCheckpointFile(cacheFile).exists();
+
         File inputFile = new File(videoPath);
-        if (!inputFile.canRead() || !isPreviousOk) {
+        if (!inputFile.canRead() || !isPreviousOk && !resuming) {
             didWriteData(messageObject, cacheFile, true, true);
-            preferences.edit().putBoolean("isPreviousOk", true).commit();
+            conversionFinished(preferences, checkpointKey);
            Log.e("Vaishali", "InputFile cannot be read");
             return false;
         }
 
-        videoConvertFirstWrite = true;
+        messageObject.firstWrite = true;
+        // parts are copied without re-encoding, so a split can't also resize; fail instead of writing one resized file.
+        // The sizes are compared before the rotation swap above.
+        VideoEditedInfo editedInfo = messageObject.videoEditedInfo;
+        if (editedInfo.splitTimes != null && (editedInfo.resultWidth != originalWidth || editedInfo.resultHeight != originalHeight)) {
+            Log.e("tmessages", "split can't be combined with a resize to " + editedInfo.resultWidth + "x" + editedInfo.resultHeight);
+            conversionFinished(preferences, checkpointKey);
+            didWriteData(messageObject, cacheFile, true, true);
+            messageObject.view.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (messageObject.progressDialog != null) {
+                        messageObject.progressDialog.dismiss();
+                    }
+                    Toast.makeText(MyApplication.applicationContext, "A video can't be split and resized at once", Toast.LENGTH_LONG).show();
+                }
+            });
+            return false;
+        }
+        if (editedInfo.splitTimes != null) {
+            boolean splitOk = splitVideo(messageObject, inputFile, cacheFile, editedInfo.rotationValue, originalWidth, originalHeight);
+            conversionFinished(preferences, checkpointKey);
+            didWriteData(messageObject, cacheFile, true, !splitOk);
+            return splitOk;
+        }
         boolean error = false;
+        boolean videoTrimmed = false;
+        boolean audioCopied = false;
+        AudioTrackCopier audioCopier = null;
         long videoStartTime = startTime;
 
         long time = System.currentTimeMillis();
+        metrics.start();
 
         if (resultWidth != 0 && resultHeight != 0) {
            Log.e("Vaishali", "Res width and height not equals to 0");
-            MP4Builder mediaMuxer = null;
+            AsyncMP4Builder mediaMuxer = null;
             MediaExtractor extractor = null;
 
             try {
@@ -379,13 +1022,27 @@ public class MediaController {
                 MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
                 Mp4Movie movie = new Mp4Movie();
                 movie.setCacheFile(cacheFile);
+                if (resumable) {
+                    movie.setCheckpointFile(getCheckpointFile(cacheFile));
+                }
                 movie.setRotation(rotationValue);
                 movie.setSize(resultWidth, resultHeight);
-                mediaMuxer = new MP4Builder().createMovie(movie);
+                movie.setInterleavePolicy(new DurationInterleavePolicy(500));
+                mediaMuxer = new AsyncMP4Builder(new MP4Builder().createMovie(movie));
+                mediaMuxer.setProgress(progress);
+                mediaMuxer.setMetrics(metrics);
                 extractor = new MediaExtractor();
                 extractor.setDataSource(inputFile.toString());
+                progress.start(cutList.getStart(0), getConvertDuration(extractor, cutList));
+                long videoResumeTime = mediaMuxer.getResumeTime(false);
+                long audioResumeTime = mediaMuxer.getResumeTime(true);
+                if (videoResumeTime >= 0) {
+                    Tracer.trace(Tracer.LEVEL_INFO, "resume conversion, video and audio at", videoResumeTime, audioResumeTime);
+                    startTime = videoResumeTime + 1;
+                    cutList = new CutList(startTime, endTime);
+                }
 
-                checkConversionCanceled();
+                checkConversionCanceled(messageObject);
 
                 if (resultWidth != originalWidth || resultHeight != originalHeight) {
                    Log.e("Vaishali", "Res w&h and original are different");
@@ -397,9 +1054,13 @@ public class MediaController {
                         MediaCodec encoder = null;
                         InputSurface inputSurface = null;
                         OutputSurface outputSurface = null;
+                        CodecPipeline codecPipeline = null;
+                        TranscodeListener transcodeListener = null;
 
                         try {
                             long videoTime = -1;
+                            int videoSegment = 0;
+                            int inputSegment = 0;
                             boolean outputDone = false;
                             boolean inputDone = false;
                             boolean decoderDone = false;
@@ -493,6 +1154,13 @@ public class MediaController {
                             }
                             Log.e("Vaishali", "MediaCodec encoder creation ");
                             encoder = MediaCodec.createEncoderByType(MIME_TYPE);
+                            Log.e("Vaishali", "MediaCodec decoder creation ");
+                            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
+                            if (Build.VERSION.SDK_INT >= 21) {
+                                transcodeListener = new TranscodeListener(messageObject, inputFile, mediaMuxer, multiSegment ? cutList : null, endTime, cacheFile, startTime > 0 && videoResumeTime < 0);
+                                codecPipeline = new CodecPipeline(new MediaCodecWrapper(decoder), new MediaCodecWrapper(encoder), cutList, transcodeListener);
+                                codecPipeline.setMetrics(metrics);
+                            }
                             Log.e("Vaishali", "MediaCodec encoder config ");
                             encoder.configure(outputFormat, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
                             Log.e("Vaishali", "MediaCodec encoder config done ");
@@ -501,8 +1169,6 @@ public class MediaController {
                                 inputSurface.makeCurrent();
                             }
                             encoder.start();
-                            Log.e("Vaishali", "MediaCodec decoder creation ");
-                            decoder = MediaCodec.createDecoderByType(inputFormat.getString(MediaFormat.KEY_MIME));
                             if (Build.VERSION.SDK_INT >= 18) {
                                 outputSurface = new OutputSurface();
                             } else {
@@ -524,17 +1190,44 @@ public class MediaController {
                                 }
                             }
 
-                            checkConversionCanceled();
+                            checkConversionCanceled(messageObject);
+
+                            if (videoResumeTime >= 0) {
+                                long audioStartTime = audioResumeTime >= 0 ? audioResumeTime + 1 : messageObject.videoEditedInfo.startTime;
+                                audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, audioStartTime, endTime, cacheFile);
+                                audioCopier.start();
+                            } else if (startTime <= 0) {
+                                if (multiSegment) {
+                                    audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, cutList, cacheFile);
+                                } else {
+                                    audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, startTime, endTime, cacheFile);
+                                }
+                                audioCopier.start();
+                            }
 
+                            if (codecPipeline != null) {
+                                videoTime = codecPipeline.run(new MediaExtractorWrapper(extractor), videoIndex, new SurfaceRenderer(outputSurface, inputSurface), mediaMuxer, resultWidth, resultHeight);
+                                videoTrimmed = true;
+                                outputDone = true;
+                            }
                             while (!outputDone) {
-                                Log.e("Vaishali", "!outputDone ");
-                                checkConversionCanceled();
+                                Tracer.trace(Tracer.LEVEL_VERBOSE, "encode loop pass");
+                                checkConversionCanceled(messageObject);
                                 if (!inputDone) {
                                     boolean eof = false;
                                     int index = extractor.getSampleTrackIndex();
                                     if (index == videoIndex) {
+                                        long waitStart = System.nanoTime();
                                         int inputBufIndex = decoder.dequeueInputBuffer(TIMEOUT_USEC);
+                                        metrics.record(ConvertMetrics.STAGE_DECODER_INPUT_WAIT, waitStart);
                                         if (inputBufIndex >= 0) {
+                                            long inputStart = System.nanoTime();
+                                            if (inputSegment + 1 < cutList.getSegmentsCount() && !cutList.isBeforeEnd(inputSegment, extractor.getSampleTime()) && (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                                                inputSegment++;
+                                                if (extractor.getSampleTime() < cutList.getStart(inputSegment)) {
+                                                    extractor.seekTo(cutList.getStart(inputSegment), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                                                }
+                                            }
                                             ByteBuffer inputBuf;
                                             if (Build.VERSION.SDK_INT < 21) {
                                                 inputBuf = decoderInputBuffers[inputBufIndex];
@@ -549,6 +1242,7 @@ public class MediaController {
                                                 decoder.queueInputBuffer(inputBufIndex, 0, chunkSize, extractor.getSampleTime(), 0);
                                                 extractor.advance();
                                             }
+                                            metrics.record(ConvertMetrics.STAGE_DECODER_INPUT, inputStart);
                                         }
                                     } else if (index == -1) {
                                         eof = true;
@@ -565,8 +1259,10 @@ public class MediaController {
                                 boolean decoderOutputAvailable = !decoderDone;
                                 boolean encoderOutputAvailable = true;
                                 while (decoderOutputAvailable || encoderOutputAvailable) {
-                                    checkConversionCanceled();
+                                    checkConversionCanceled(messageObject);
+                                    long encoderWaitStart = System.nanoTime();
                                     int encoderStatus = encoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+                                    metrics.record(ConvertMetrics.STAGE_ENCODER_OUTPUT_WAIT, encoderWaitStart);
                                     if (encoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
                                         encoderOutputAvailable = false;
                                     } else if (encoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
@@ -592,6 +1288,7 @@ public class MediaController {
                                         }
                                         if (info.size > 1) {
                                             if ((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                                                Tracer.trace(Tracer.LEVEL_VERBOSE, "encoded sample", info.presentationTimeUs, info.size);
                                                 if (mediaMuxer.writeSampleData(videoTrackIndex, encodedData, info, false)) {
                                                     didWriteData(messageObject, cacheFile, false, false);
                                                 }
@@ -632,7 +1329,9 @@ public class MediaController {
                                     }
 
                                     if (!decoderDone) {
+                                        long decoderWaitStart = System.nanoTime();
                                         int decoderStatus = decoder.dequeueOutputBuffer(info, TIMEOUT_USEC);
+                                        metrics.record(ConvertMetrics.STAGE_DECODER_OUTPUT_WAIT, decoderWaitStart);
                                         if (decoderStatus == MediaCodec.INFO_TRY_AGAIN_LATER) {
                                             decoderOutputAvailable = false;
                                         } else if (decoderStatus == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
@@ -649,20 +1348,30 @@ public class MediaController {
                                             } else {
                                                 doRender = info.size != 0 || info.presentationTimeUs != 0;
                                             }
-                                            if (endTime > 0 && info.presentationTimeUs >= endTime) {
+                                            while (videoSegment + 1 < cutList.getSegmentsCount() && !cutList.isBeforeEnd(videoSegment, info.presentationTimeUs)) {
+                                                videoSegment++;
+                                            }
+                                            if (!cutList.isBeforeEnd(videoSegment, info.presentationTimeUs)) {
                                                 inputDone = true;
                                                 decoderDone = true;
                                                 doRender = false;
                                                 info.flags |= MediaCodec.BUFFER_FLAG_END_OF_STREAM;
                                             }
-                                            if (startTime > 0 && videoTime == -1) {
-                                                if (info.presentationTimeUs < startTime) {
-                                                    doRender = false;
-                                                    Log.e("tmessages", "drop frame startTime = " + startTime + " present time = " + info.presentationTimeUs);
-                                                } else {
-                                                    videoTime = info.presentationTimeUs;
+                                            if (info.presentationTimeUs < cutList.getStart(videoSegment)) {
+                                                doRender = false;
+                                                Tracer.trace(Tracer.LEVEL_DEBUG, "drop frame before segment start", cutList.getStart(videoSegment), info.presentationTimeUs);
+                                            } else if (startTime > 0 && videoTime == -1) {
+                                                videoTime = info.presentationTimeUs;
+                                                if (audioCopier == null) {
+                                                    if (multiSegment) {
+                                                        audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, cutList, cacheFile);
+                                                    } else {
+                                                        audioCopier = new FileAudioCopier(messageObject, inputFile, mediaMuxer, videoTime, endTime, cacheFile);
+                                                    }
+                                                    audioCopier.start();
                                                 }
                                             }
+                                            long renderStart = System.nanoTime();
                                             decoder.releaseOutputBuffer(decoderStatus, doRender);
                                             if (doRender) {
                                                 boolean errorWait = false;
@@ -670,12 +1379,12 @@ public class MediaController {
                                                     outputSurface.awaitNewImage();
                                                 } catch (Exception e) {
                                                     errorWait = true;
-                                                    Log.e("tmessages", e.getMessage());
+                                                    Tracer.trace(Tracer.LEVEL_WARN, "awaitNewImage failed", info.presentationTimeUs);
                                                 }
                                                 if (!errorWait) {
                                                     if (Build.VERSION.SDK_INT >= 18) {
                                                         outputSurface.drawImage(false);
-                                                        inputSurface.setPresentationTime(info.presentationTimeUs * 1000);
+                                                        inputSurface.setPresentationTime(cutList.getOutputTime(videoSegment, info.presentationTimeUs) * 1000);
                                                         inputSurface.swapBuffers();
                                                     } else {
                                                         int inputBufIndex = encoder.dequeueInputBuffer(TIMEOUT_USEC);
@@ -686,28 +1395,27 @@ public class MediaController {
                                                             yuvBuf.clear();
                                                             //TODO
 //                                                            Utilities.convertVideoFrame(rgbBuf, yuvBuf, colorFormat, resultWidth, resultHeight, padding, swapUV);
-                                                            encoder.queueInputBuffer(inputBufIndex, 0, bufferSize, info.presentationTimeUs, 0);
+                                                            encoder.queueInputBuffer(inputBufIndex, 0, bufferSize, cutList.getOutputTime(videoSegment, info.presentationTimeUs), 0);
                                                         } else {
-                                                            Log.e("tmessages", "input buffer not available");
+                                                            Tracer.trace(Tracer.LEVEL_WARN, "encoder input buffer not available", info.presentationTimeUs);
                                                         }
                                                     }
+                                                    metrics.addFrameRendered();
                                                 }
+                                                metrics.record(ConvertMetrics.STAGE_RENDER, renderStart);
                                             }
                                             if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
                                                 decoderOutputAvailable = false;
-                                                Log.e("Vaishali", "decoder stream end");
-                                                isVideoTrimmed = true;
+                                                Tracer.trace(Tracer.LEVEL_INFO, "decoder end of stream", info.presentationTimeUs);
+                                                videoTrimmed = true;
                                                 if (Build.VERSION.SDK_INT >= 18) {
-                                                    Log.e("Vaishali", "STart  version >=18");
                                                     encoder.signalEndOfInputStream();
-                                                    Log.e("Vaishali", "End version >=18");
                                                 } else {
-                                                    Log.e("Vaishali", "version < 18");
                                                     int inputBufIndex = encoder.dequeueInputBuffer(TIMEOUT_USEC);
                                                     if (inputBufIndex >= 0) {
-                                                        Log.e("Vaishali", "inputBufIndex >=0");
                                                         encoder.queueInputBuffer(inputBufIndex, 0, 1, info.presentationTimeUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                                                        Log.e("Vaishali", "endssss");
+                                                    } else {
+                                                        Tracer.trace(Tracer.LEVEL_WARN, "encoder input buffer not available for end of stream");
                                                     }
                                                 }
                                             }
@@ -716,18 +1424,19 @@ public class MediaController {
                                 }
                             }
                             if (videoTime != -1) {
-                                Log.e("Vaishali", "LAST == videoTime != 1");
+                                Tracer.trace(Tracer.LEVEL_INFO, "video start time", videoTime);
                                 videoStartTime = videoTime;
                             }
                         } catch(final Exception e){
+                            Tracer.dump("transcode failed: " + e);
                             if( e instanceof android.media.MediaCodec.CodecException ) {
                                 Log.e("Vaishali", "Exception == == " + e.toString());
                                 error = true;
-                                mView.post(new Runnable() {
+                                messageObject.view.post(new Runnable() {
                                     @Override
                                     public void run() {
-                                        if (progressDialog != null) {
-                                            progressDialog.dismiss();
+                                        if (messageObject.progressDialog != null) {
+                                            messageObject.progressDialog.dismiss();
                                         }
                                         if (cacheFile.exists()) {
                                             cacheFile.delete();
@@ -739,6 +1448,10 @@ public class MediaController {
                         }
 
 
+                        if (transcodeListener != null && transcodeListener.audioCopier != null) {
+                            audioCopier = transcodeListener.audioCopier;
+                        }
+                        mediaMuxer.finishWriting();
                         extractor.unselectTrack(videoIndex);
 
                         if (outputSurface != null) {
@@ -756,29 +1469,60 @@ public class MediaController {
                             encoder.release();
                         }
                         Log.e("Vaishali", "Releasing everything!!");
-                        checkConversionCanceled();
+                        checkConversionCanceled(messageObject);
                     }
                 } else {
                    Log.e("Vaishali", "!VideoIndex>=0..in else part");
-                    long videoTime = readAndWriteTrack(messageObject, extractor, mediaMuxer, info, startTime, endTime, cacheFile, false);
+                    long videoTime;
+                    Mp4Demuxer demuxer = null;
+                    if (multiSegment) {
+                        if ((demuxer = openDemuxer(inputFile)) != null) {
+                            try {
+                                videoTime = mediaMuxer.copyTrimmedTracks(demuxer, cutList);
+                                audioCopied = true;
+                            } finally {
+                                demuxer.close();
+                            }
+                        } else {
+                            cutList = alignToSyncSamples(extractor, cutList);
+                            videoTime = readAndWriteTrack(messageObject, extractor, mediaMuxer, info, cutList, cacheFile, false);
+                        }
+                    } else if (messageObject.videoEditedInfo.smartCut && startTime > 0 && Build.VERSION.SDK_INT >= 18) {
+                        videoTime = smartCutVideoTrack(messageObject, extractor, mediaMuxer, info, startTime, endTime, bitrate, cacheFile);
+                    } else if ((demuxer = openDemuxer(inputFile)) != null) {
+                        try {
+                            videoTime = mediaMuxer.copyTrimmedTracks(demuxer, startTime, endTime);
+                            audioCopied = true;
+                        } finally {
+                            demuxer.close();
+                        }
+                    } else {
+                        videoTime = readAndWriteTrack(messageObject, extractor, mediaMuxer, info, startTime, endTime, cacheFile, false);
+                    }
                     if (videoTime != -1) {
                        Log.e("Vaishali", "VideoTime != -1");
                         videoStartTime = videoTime;
                     }
-                    isVideoTrimmed = true;
+                    videoTrimmed = true;
                 }
-                if (!error) {
+                if (audioCopier != null) {
+                    audioCopier.finish();
+                } else if (!error && !audioCopied) {
                     Log.e("Vaishali", "Not error");
-                    readAndWriteTrack(messageObject, extractor, mediaMuxer, info, videoStartTime, endTime, cacheFile, true);
+                    if (multiSegment) {
+                        readAndWriteTrack(messageObject, extractor, mediaMuxer, info, cutList, cacheFile, true);
+                    } else {
+                        readAndWriteTrack(messageObject, extractor, mediaMuxer, info, videoStartTime, endTime, cacheFile, true);
+                    }
                     Log.e("Vaishali", "Read write track");
                 }
                Log.e("Vaishali", "MediaCodec Exit");
-                if(isVideoTrimmed) {
-                    mView.post(new Runnable() {
+                if(videoTrimmed) {
+                    messageObject.view.post(new Runnable() {
                         @Override
                         public void run() {
-                            if (progressDialog != null) {
-                                progressDialog.dismiss();
+                            if (messageObject.progressDialog != null) {
+                                messageObject.progressDialog.dismiss();
                             }
                             Toast.makeText(MyApplication.applicationContext, "Trimmed Video", Toast.LENGTH_SHORT).show();
                         }
@@ -787,11 +1531,12 @@ public class MediaController {
             } catch (final Exception e) {
                 error = true;
                 Log.e("Vaishali", "Exception2 == == "+e.toString());
-                mView.post(new Runnable() {
+                Tracer.dump("conversion failed: " + e);
+                messageObject.view.post(new Runnable() {
                     @Override
                     public void run() {
-                        if(progressDialog != null){
-                            progressDialog.dismiss();
+                        if (messageObject.progressDialog != null) {
+                            messageObject.progressDialog.dismiss();
                         }
                         if(cacheFile.exists()){
                             cacheFile.delete();
@@ -803,6 +1548,14 @@ public class MediaController {
                 if (extractor != null) {
                     extractor.release();
                 }
+                if (audioCopier != null) {
+                    audioCopier.interrupt();
+                    try {
+                        audioCopier.join();
+                    } catch (InterruptedException e) {
+                        Log.e("tmessages", e.toString());
+                    }
+                }
                 if (mediaMuxer != null) {
                     try {
                         mediaMuxer.finishMovie(false);
@@ -811,14 +1564,75 @@ public class MediaController {
                     }
                 }
                 Log.e("Vaishali", "time = " + (System.currentTimeMillis() - time));
+                metrics.finish();
+                try {
+                    Tracer.trace(Tracer.LEVEL_INFO, "conversion metrics " + metrics.toJson());
+                } catch (Exception e) {
+                    Log.e("tmessages", e.toString());
+                }
             }
         } else {
-            preferences.edit().putBoolean("isPreviousOk", true).commit();
+            conversionFinished(preferences, checkpointKey);
             didWriteData(messageObject, cacheFile, true, true);
             return false;
         }
-        preferences.edit().putBoolean("isPreviousOk", true).commit();
+        progress.finish(error ? 0 : cacheFile.length());
+        conversionFinished(preferences, checkpointKey);
         didWriteData(messageObject, cacheFile, true, error);
         return true;
     }
+
+    private long getConvertDuration(MediaExtractor extractor, CutList cutList) {
+        long duration = cutList.getDuration();
+        if (duration < 0) {
+            int videoIndex = selectTrack(extractor, false);
+            if (videoIndex >= 0) {
+                MediaFormat format = extractor.getTrackFormat(videoIndex);
+                if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                    duration = format.getLong(MediaFormat.KEY_DURATION) - cutList.getStart(0);
+                }
+            }
+        }
+        return duration;
+    }
+
+    private void conversionFinished(SharedPreferences preferences, String checkpointKey) {
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.remove(checkpointKey).remove(checkpointKey + "_attempts");
+        if (runningConversions.decrementAndGet() == 0) {
+            editor.putBoolean("isPreviousOk", true);
+        }
+        editor.commit();
+    }
+
+    private static File createConversionFile() {
+        int randono = new Random().nextInt();
+        return new File(Environment.getExternalStorageDirectory().getAbsolutePath()+"/DCIM/"+"ashish"+ randono + ".mp4");
+    }
+
+    private static File getCheckpointFile(File cacheFile) {
+        return new File(cacheFile.getPath() + ".checkpoint");
+    }
+
+    // Output file for a conversion that can be resumed. If the same edit was interrupted before, its partial output
+    // is reused while it still has a checkpoint, unless resuming already failed MAX_RESUME_ATTEMPTS times in a row.
+    private static File getConversionFile(SharedPreferences preferences, String checkpointKey) {
+        String path = preferences.getString(checkpointKey, null);
+        int attempts = preferences.getInt(checkpointKey + "_attempts", 0);
+        if (path != null) {
+            File file = new File(path);
+            File checkpointFile = getCheckpointFile(file);
+            if (file.exists() && checkpointFile.exists()) {
+                if (attempts < MAX_RESUME_ATTEMPTS) {
+                    preferences.edit().putInt(checkpointKey + "_attempts", attempts + 1).commit();
+                    return file;
+                }
+                file.delete();
+            }
+            checkpointFile.delete();
+        }
+        File file = createConversionFile();
+        preferences.edit().putString(checkpointKey, file.getAbsolutePath()).putInt(checkpointKey + "_attempts", 0).commit();
+        return file;
+    }
 }
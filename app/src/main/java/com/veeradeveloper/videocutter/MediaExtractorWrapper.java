@@ -0,0 +1,46 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaExtractor;
+
+import java.nio.ByteBuffer;
+
+@TargetApi(16)
+public class MediaExtractorWrapper implements Extractor {
+
+    private MediaExtractor extractor;
+
+    public MediaExtractorWrapper(MediaExtractor mediaExtractor) {
+        extractor = mediaExtractor;
+    }
+
+    @Override
+    public int getSampleTrackIndex() {
+        return extractor.getSampleTrackIndex();
+    }
+
+    @Override
+    public long getSampleTime() {
+        return extractor.getSampleTime();
+    }
+
+    @Override
+    public int getSampleFlags() {
+        return extractor.getSampleFlags();
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        return extractor.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public boolean advance() {
+        return extractor.advance();
+    }
+
+    @Override
+    public void seekTo(long timeUs, int mode) {
+        extractor.seekTo(timeUs, mode);
+    }
+}
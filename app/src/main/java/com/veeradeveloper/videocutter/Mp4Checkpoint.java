@@ -0,0 +1,246 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// Sidecar journal that lets MP4Builder continue a partially written movie. Every commit appends one checksummed
+// batch with the tracks and samples added since the previous commit and the output length they are complete at.
+// A batch torn by a kill is ignored when reading, so the journal always describes a consistent prefix of the output.
+@TargetApi(16)
+public class Mp4Checkpoint {
+
+    private static final int MAGIC = 0x6d34636b;
+    private static final int VERSION = 1;
+
+    public static class TrackState {
+        public Mp4Demuxer.TrackInfo trackInfo;
+        public int samplesCount;
+        public long[] offsets = new long[256];
+        public int[] sizes = new int[256];
+        public long[] presentationTimes = new long[256];
+        public int[] flags = new int[256];
+
+        private void addSample(long offset, int size, long presentationTimeUs, int sampleFlags) {
+            if (samplesCount == sizes.length) {
+                offsets = Arrays.copyOf(offsets, samplesCount * 2);
+                sizes = Arrays.copyOf(sizes, samplesCount * 2);
+                presentationTimes = Arrays.copyOf(presentationTimes, samplesCount * 2);
+                flags = Arrays.copyOf(flags, samplesCount * 2);
+            }
+            offsets[samplesCount] = offset;
+            sizes[samplesCount] = size;
+            presentationTimes[samplesCount] = presentationTimeUs;
+            flags[samplesCount] = sampleFlags;
+            samplesCount++;
+        }
+
+        public long getLastPresentationTimeUs() {
+            return samplesCount == 0 ? -1 : presentationTimes[samplesCount - 1];
+        }
+    }
+
+    public static class State {
+        public ArrayList<TrackState> tracks = new ArrayList<>();
+        public long dataOffset;
+        private long validLength;
+    }
+
+    private RandomAccessFile file;
+    private File journalFile;
+    private long intervalBytes;
+    private long lastCommitOffset;
+    private ByteArrayOutputStream pendingTracks = new ByteArrayOutputStream();
+    private DataOutputStream pendingTracksStream = new DataOutputStream(pendingTracks);
+    private int pendingTracksCount;
+    private ByteArrayOutputStream pendingSamples = new ByteArrayOutputStream();
+    private DataOutputStream pendingSamplesStream = new DataOutputStream(pendingSamples);
+    private int pendingSamplesCount;
+    private ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private CRC32 crc = new CRC32();
+
+    // Opens the journal for appending. With a state read from it, the journal continues after its last valid
+    // batch, otherwise it is started from scratch.
+    public Mp4Checkpoint(File checkpointFile, State state, long commitIntervalBytes) throws IOException {
+        journalFile = checkpointFile;
+        intervalBytes = commitIntervalBytes;
+        file = new RandomAccessFile(checkpointFile, "rw");
+        if (state != null) {
+            file.setLength(state.validLength);
+            file.seek(state.validLength);
+            lastCommitOffset = state.dataOffset;
+        } else {
+            file.setLength(0);
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+        }
+    }
+
+    public void addTrack(Track track) throws IOException {
+        pendingTracksStream.writeBoolean(track.isAudio());
+        pendingTracksStream.writeUTF(track.getHandler());
+        pendingTracksStream.writeInt(track.getTimeScale());
+        pendingTracksStream.writeInt(track.getWidth());
+        pendingTracksStream.writeInt(track.getHeight());
+        pendingTracksStream.writeFloat(track.getVolume());
+        pendingTracksStream.writeLong(track.getSampleDurations().getLastSampleDuration());
+        byte[] stsd = Mp4Demuxer.getBytes(track.getSampleDescriptionBox());
+        pendingTracksStream.writeInt(stsd.length);
+        pendingTracksStream.write(stsd);
+        pendingTracksCount++;
+    }
+
+    public void addSample(int trackIndex, long offset, MediaCodec.BufferInfo bufferInfo) throws IOException {
+        pendingSamplesStream.writeInt(trackIndex);
+        pendingSamplesStream.writeLong(offset);
+        pendingSamplesStream.writeInt(bufferInfo.size);
+        pendingSamplesStream.writeLong(bufferInfo.presentationTimeUs);
+        pendingSamplesStream.writeInt(bufferInfo.flags);
+        pendingSamplesCount++;
+    }
+
+    public boolean needsCommit(long dataOffset) {
+        return dataOffset - lastCommitOffset >= intervalBytes;
+    }
+
+    // The output must already hold every byte below dataOffset, with all mdat headers final.
+    public void commit(long dataOffset) throws IOException {
+        batch.reset();
+        DataOutputStream stream = new DataOutputStream(batch);
+        stream.writeInt(pendingTracksCount);
+        pendingTracks.writeTo(stream);
+        stream.writeInt(pendingSamplesCount);
+        pendingSamples.writeTo(stream);
+        stream.writeLong(dataOffset);
+        stream.flush();
+        byte[] data = batch.toByteArray();
+        crc.reset();
+        crc.update(data, 0, data.length);
+
+        ByteBuffer frame = ByteBuffer.allocate(4 + data.length + 8);
+        frame.putInt(data.length);
+        frame.put(data);
+        frame.putLong(crc.getValue());
+        file.write(frame.array());
+
+        pendingTracks.reset();
+        pendingTracksCount = 0;
+        pendingSamples.reset();
+        pendingSamplesCount = 0;
+        lastCommitOffset = dataOffset;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    public void delete() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // nothing to do, the file is deleted anyway
+        }
+        journalFile.delete();
+    }
+
+    // Returns the state after the last complete batch, or null if the journal is missing or holds no commit.
+    public static State read(File checkpointFile) {
+        if (!checkpointFile.exists()) {
+            return null;
+        }
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)));
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return null;
+            }
+            State state = new State();
+            long position = 8;
+            CRC32 crc = new CRC32();
+            boolean committed = false;
+            while (true) {
+                byte[] data;
+                try {
+                    int length = input.readInt();
+                    if (length <= 0 || length > checkpointFile.length()) {
+                        break;
+                    }
+                    data = new byte[length];
+                    input.readFully(data);
+                    crc.reset();
+                    crc.update(data, 0, length);
+                    if (input.readLong() != crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                readBatch(new DataInputStream(new ByteArrayInputStream(data)), state);
+                position += 4 + data.length + 8;
+                state.validLength = position;
+                committed = true;
+            }
+            return committed ? state : null;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void readBatch(DataInputStream stream, State state) throws IOException {
+        int tracksCount = stream.readInt();
+        for (int a = 0; a < tracksCount; a++) {
+            Mp4Demuxer.TrackInfo trackInfo = new Mp4Demuxer.TrackInfo();
+            trackInfo.isAudio = stream.readBoolean();
+            trackInfo.handler = stream.readUTF();
+            trackInfo.timeScale = stream.readInt();
+            trackInfo.width = stream.readInt();
+            trackInfo.height = stream.readInt();
+            trackInfo.volume = stream.readFloat();
+            trackInfo.lastSampleDuration = stream.readLong();
+            byte[] stsd = new byte[stream.readInt()];
+            stream.readFully(stsd);
+            trackInfo.sampleDescriptionBox = Mp4Demuxer.parseSampleDescription(stsd);
+            if (!trackInfo.isAudio) {
+                trackInfo.syncSamples = new boolean[0];
+            }
+            TrackState trackState = new TrackState();
+            trackState.trackInfo = trackInfo;
+            state.tracks.add(trackState);
+        }
+        int samplesCount = stream.readInt();
+        for (int a = 0; a < samplesCount; a++) {
+            int trackIndex = stream.readInt();
+            long offset = stream.readLong();
+            int size = stream.readInt();
+            long presentationTimeUs = stream.readLong();
+            int flags = stream.readInt();
+            if (trackIndex < 0 || trackIndex >= state.tracks.size()) {
+                throw new IOException("sample for unknown track " + trackIndex);
+            }
+            state.tracks.get(trackIndex).addSample(offset, size, presentationTimeUs, flags);
+        }
+        state.dataOffset = stream.readLong();
+    }
+}
@@ -0,0 +1,185 @@
+package com.veeradeveloper.videocutter;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class Mp4Concatenator {
+
+    private ArrayList<Mp4Demuxer> demuxers;
+    private MP4Builder builder;
+    private int[] runTracks = new int[256];
+    private int[] runSamples = new int[256];
+    private int runCount;
+
+    public Mp4Concatenator(ArrayList<Mp4Demuxer> inputs, MP4Builder mp4Builder) {
+        demuxers = inputs;
+        builder = mp4Builder;
+    }
+
+    // Joins the files into output. Returns the output duration in us, or -1 without creating the output if the inputs
+    // can't be joined without re-encoding. If the copy fails the output is deleted and the exception is passed on.
+    public static long concat(ArrayList<File> inputs, File output) throws Exception {
+        ArrayList<Mp4Demuxer> demuxers = new ArrayList<>();
+        MP4Builder builder = null;
+        try {
+            for (int a = 0; a < inputs.size(); a++) {
+                demuxers.add(new Mp4Demuxer(inputs.get(a)));
+            }
+            if (!isCompatible(demuxers)) {
+                return -1;
+            }
+            Mp4Demuxer.TrackInfo video = demuxers.get(0).getTrack(false);
+            Mp4Movie movie = new Mp4Movie();
+            movie.setCacheFile(output);
+            movie.setSize(video.width, video.height);
+            builder = new MP4Builder().createMovie(movie);
+            long duration = new Mp4Concatenator(demuxers, builder).concat();
+            builder.finishMovie(false);
+            builder = null;
+            return duration;
+        } finally {
+            if (builder != null) {
+                try {
+                    builder.finishMovie(true);
+                } catch (Exception e) {
+                    Log.e("tmessages", e.toString());
+                }
+                output.delete();
+            }
+            for (int a = 0; a < demuxers.size(); a++) {
+                demuxers.get(a).close();
+            }
+        }
+    }
+
+    // True if every input has the same tracks with byte-identical sample descriptions (avcC, esds, ...)
+    // and the same timescales, so their samples can be appended to one track without re-encoding.
+    public static boolean isCompatible(ArrayList<Mp4Demuxer> demuxers) throws IOException {
+        if (demuxers.isEmpty() || demuxers.get(0).getTrack(false) == null) {
+            return false;
+        }
+        Mp4Demuxer first = demuxers.get(0);
+        for (int a = 1; a < demuxers.size(); a++) {
+            Mp4Demuxer demuxer = demuxers.get(a);
+            if (!isCompatible(first.getTrack(false), demuxer.getTrack(false)) || !isCompatible(first.getTrack(true), demuxer.getTrack(true))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCompatible(Mp4Demuxer.TrackInfo first, Mp4Demuxer.TrackInfo other) throws IOException {
+        if (first == null || other == null) {
+            return first == other;
+        }
+        return first.timeScale == other.timeScale
+                && (first.compositionOffsets != null) == (other.compositionOffsets != null)
+                && (first.syncSamples != null) == (other.syncSamples != null)
+                && Arrays.equals(Mp4Demuxer.getBytes(first.sampleDescriptionBox), Mp4Demuxer.getBytes(other.sampleDescriptionBox));
+    }
+
+    // Appends every input to the output. The first clip plays as it does in its source, edit list included; every
+    // later clip starts at its first video frame when the clip before it ends on screen, so small audio/video
+    // duration differences don't add up over many clips. A track whose hidden pre-roll (AAC priming) would overlap
+    // the end of the previous clip is delayed by that overlap instead. Returns the output duration in us.
+    public long concat() throws Exception {
+        if (!isCompatible(demuxers)) {
+            throw new IllegalStateException("inputs have different codec configurations");
+        }
+        Mp4Demuxer first = demuxers.get(0);
+        Mp4Demuxer.TrackInfo[] firstSources = new Mp4Demuxer.TrackInfo[]{first.getTrack(false), first.getTrack(true)};
+        int[] muxerTracks = new int[]{builder.addTrack(firstSources[0]), firstSources[1] != null ? builder.addTrack(firstSources[1]) : -1};
+        long[] editMediaTimes = new long[2];
+        for (int b = 0; b < 2; b++) {
+            Mp4Demuxer.TrackInfo source = firstSources[b];
+            if (source == null) {
+                continue;
+            }
+            editMediaTimes[b] = source.editMediaTime - source.editStartUs * source.timeScale / 1000000L;
+            if (editMediaTimes[b] != 0) {
+                builder.setEditMediaTime(muxerTracks[b], editMediaTimes[b]);
+            }
+        }
+
+        long[] trackEnds = new long[2];
+        long clipStartUs = firstSources[0].getPresentationTimeUs(0);
+        for (int a = 0; a < demuxers.size(); a++) {
+            Mp4Demuxer demuxer = demuxers.get(a);
+            Mp4Demuxer.TrackInfo[] sources = new Mp4Demuxer.TrackInfo[]{demuxer.getTrack(false), demuxer.getTrack(true)};
+            long originUs = sources[0].getPresentationTimeUs(0);
+            long[] shifts = new long[2];
+            long clipEndUs = originUs;
+            for (int b = 0; b < 2; b++) {
+                Mp4Demuxer.TrackInfo source = sources[b];
+                if (source == null || source.samplesCount == 0) {
+                    continue;
+                }
+                // moves the source timeline so that originUs lands on clipStartUs in the output
+                shifts[b] = (clipStartUs - originUs + source.editStartUs) * source.timeScale / 1000000L - source.editMediaTime + editMediaTimes[b];
+                if (a != 0) {
+                    shifts[b] = Math.max(shifts[b], trackEnds[b] - source.decodeTimes[0]);
+                }
+                int last = source.samplesCount - 1;
+                trackEnds[b] = source.decodeTimes[last] + source.getSampleDuration(last) + shifts[b];
+                for (int c = 0; c < source.samplesCount; c++) {
+                    clipEndUs = Math.max(clipEndUs, source.getPresentationTimeUs(c) + source.getSampleDuration(c) * 1000000L / source.timeScale);
+                }
+            }
+            copyClip(demuxer, sources, muxerTracks, shifts);
+            clipStartUs += clipEndUs - originUs;
+        }
+        return clipStartUs;
+    }
+
+    private void copyClip(Mp4Demuxer demuxer, Mp4Demuxer.TrackInfo[] sources, int[] muxerTracks, long[] shifts) throws Exception {
+        int[] next = new int[2];
+        int[] end = new int[]{sources[0].samplesCount, sources[1] != null ? sources[1].samplesCount : 0};
+        long runStart = -1;
+        long runEnd = -1;
+        while (true) {
+            int track = -1;
+            for (int a = 0; a < 2; a++) {
+                if (next[a] < end[a] && (track == -1 || sources[a].offsets[next[a]] < sources[track].offsets[next[track]])) {
+                    track = a;
+                }
+            }
+            if (track == -1) {
+                break;
+            }
+            int sample = next[track]++;
+            long offset = sources[track].offsets[sample];
+            if (offset != runEnd) {
+                flushRun(demuxer, sources, muxerTracks, shifts, runStart, runEnd);
+                runStart = offset;
+            }
+            runEnd = offset + sources[track].sizes[sample];
+            if (runCount == runSamples.length) {
+                runTracks = Arrays.copyOf(runTracks, runCount * 2);
+                runSamples = Arrays.copyOf(runSamples, runCount * 2);
+            }
+            runTracks[runCount] = track;
+            runSamples[runCount] = sample;
+            runCount++;
+        }
+        flushRun(demuxer, sources, muxerTracks, shifts, runStart, runEnd);
+    }
+
+    private void flushRun(Mp4Demuxer demuxer, Mp4Demuxer.TrackInfo[] sources, int[] muxerTracks, long[] shifts, long runStart, long runEnd) throws Exception {
+        if (runCount == 0) {
+            return;
+        }
+        long rangeOffset = builder.writeSampleRange(demuxer, runStart, runEnd - runStart);
+        for (int a = 0; a < runCount; a++) {
+            int track = runTracks[a];
+            Mp4Demuxer.TrackInfo source = sources[track];
+            int sample = runSamples[a];
+            int compositionOffset = source.compositionOffsets != null ? source.compositionOffsets[sample] : 0;
+            builder.addSample(muxerTracks[track], rangeOffset + source.offsets[sample] - runStart, source.sizes[sample], source.decodeTimes[sample] + shifts[track], compositionOffset, source.isSync(sample));
+        }
+        runCount = 0;
+    }
+}
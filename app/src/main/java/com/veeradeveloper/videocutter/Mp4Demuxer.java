@@ -0,0 +1,251 @@
+package com.veeradeveloper.videocutter;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.ChunkOffsetBox;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.EditBox;
+import com.coremedia.iso.boxes.EditListBox;
+import com.coremedia.iso.boxes.MediaBox;
+import com.coremedia.iso.boxes.MovieBox;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.SampleSizeBox;
+import com.coremedia.iso.boxes.SampleTableBox;
+import com.coremedia.iso.boxes.SampleToChunkBox;
+import com.coremedia.iso.boxes.SyncSampleBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.coremedia.iso.boxes.TrackBox;
+import com.googlecode.mp4parser.FileDataSourceImpl;
+import com.googlecode.mp4parser.MemoryDataSourceImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Mp4Demuxer {
+
+    public static class TrackInfo {
+        public long trackId;
+        public String handler;
+        public boolean isAudio;
+        public long timeScale;
+        public int width;
+        public int height;
+        public float volume;
+        public SampleDescriptionBox sampleDescriptionBox;
+        public int samplesCount;
+        public long[] offsets;
+        public int[] sizes;
+        public long[] decodeTimes;
+        public int[] compositionOffsets;
+        public boolean[] syncSamples;
+        public long lastSampleDuration;
+        // from the edit list: the media time shown at editStartUs, which is when the track starts in the movie
+        public long editMediaTime;
+        public long editStartUs;
+
+        public boolean isSync(int index) {
+            return syncSamples == null || syncSamples[index];
+        }
+
+        public long getPresentationTimeUs(int index) {
+            long time = decodeTimes[index] + (compositionOffsets != null ? compositionOffsets[index] : 0);
+            return (time - editMediaTime) * 1000000L / timeScale + editStartUs;
+        }
+
+        public long getDecodeTimeUs(int index) {
+            return (decodeTimes[index] - editMediaTime) * 1000000L / timeScale + editStartUs;
+        }
+
+        // Media time that is shown at the given movie time.
+        public long getMediaTime(long timeUs) {
+            return (timeUs - editStartUs) * timeScale / 1000000L + editMediaTime;
+        }
+
+        public long getSampleDuration(int index) {
+            return index + 1 < samplesCount ? decodeTimes[index + 1] - decodeTimes[index] : lastSampleDuration;
+        }
+
+        public int findSyncSampleBefore(long timeUs) {
+            int result = 0;
+            for (int a = 0; a < samplesCount; a++) {
+                if (isSync(a)) {
+                    if (getPresentationTimeUs(a) > timeUs) {
+                        break;
+                    }
+                    result = a;
+                }
+            }
+            return result;
+        }
+    }
+
+    private FileInputStream inputStream;
+    private FileChannel channel;
+    private ArrayList<TrackInfo> tracks = new ArrayList<>();
+
+    public Mp4Demuxer(File file) throws IOException {
+        inputStream = new FileInputStream(file);
+        channel = inputStream.getChannel();
+        IsoFile isoFile = new IsoFile(new FileDataSourceImpl(channel));
+        MovieBox moov = isoFile.getMovieBox();
+        if (moov == null) {
+            close();
+            throw new IOException("no moov box in " + file);
+        }
+        for (TrackBox trackBox : moov.getBoxes(TrackBox.class)) {
+            TrackInfo trackInfo = parseTrack(trackBox, moov.getMovieHeaderBox().getTimescale());
+            if (trackInfo != null) {
+                tracks.add(trackInfo);
+            }
+        }
+    }
+
+    private TrackInfo parseTrack(TrackBox trackBox, long movieTimeScale) throws IOException {
+        MediaBox mdia = trackBox.getMediaBox();
+        SampleTableBox stbl = trackBox.getSampleTableBox();
+        if (mdia == null || stbl == null || stbl.getSampleSizeBox() == null || stbl.getChunkOffsetBox() == null || stbl.getSampleToChunkBox() == null || stbl.getTimeToSampleBox() == null) {
+            return null;
+        }
+        SampleSizeBox stsz = stbl.getSampleSizeBox();
+        int count = (int) stsz.getSampleCount();
+        if (count == 0) {
+            return null;
+        }
+
+        TrackInfo trackInfo = new TrackInfo();
+        trackInfo.trackId = trackBox.getTrackHeaderBox().getTrackId();
+        trackInfo.handler = mdia.getHandlerBox().getHandlerType();
+        trackInfo.isAudio = "soun".equals(trackInfo.handler);
+        trackInfo.timeScale = mdia.getMediaHeaderBox().getTimescale();
+        trackInfo.width = (int) trackBox.getTrackHeaderBox().getWidth();
+        trackInfo.height = (int) trackBox.getTrackHeaderBox().getHeight();
+        trackInfo.volume = trackBox.getTrackHeaderBox().getVolume();
+        trackInfo.sampleDescriptionBox = detach(stbl.getSampleDescriptionBox());
+        trackInfo.samplesCount = count;
+
+        trackInfo.sizes = new int[count];
+        for (int a = 0; a < count; a++) {
+            trackInfo.sizes[a] = (int) stsz.getSampleSizeAtIndex(a);
+        }
+
+        ChunkOffsetBox stco = stbl.getChunkOffsetBox();
+        long[] chunkOffsets = stco.getChunkOffsets();
+        long[] samplesPerChunk = stbl.getSampleToChunkBox().blowup(chunkOffsets.length);
+        trackInfo.offsets = new long[count];
+        int sample = 0;
+        for (int chunk = 0; chunk < chunkOffsets.length && sample < count; chunk++) {
+            long offset = chunkOffsets[chunk];
+            for (long a = 0; a < samplesPerChunk[chunk] && sample < count; a++) {
+                trackInfo.offsets[sample] = offset;
+                offset += trackInfo.sizes[sample];
+                sample++;
+            }
+        }
+
+        long[] durations = TimeToSampleBox.blowupTimeToSamples(stbl.getTimeToSampleBox().getEntries());
+        trackInfo.decodeTimes = new long[count];
+        long time = 0;
+        for (int a = 0; a < count; a++) {
+            trackInfo.decodeTimes[a] = time;
+            time += a < durations.length ? durations[a] : 0;
+        }
+        trackInfo.lastSampleDuration = durations.length >= count ? durations[count - 1] : 0;
+
+        CompositionTimeToSample ctts = stbl.getCompositionTimeToSample();
+        if (ctts != null) {
+            int[] offsets = CompositionTimeToSample.blowupCompositionTimes(ctts.getEntries());
+            trackInfo.compositionOffsets = new int[count];
+            System.arraycopy(offsets, 0, trackInfo.compositionOffsets, 0, Math.min(offsets.length, count));
+        }
+
+        SyncSampleBox stss = stbl.getSyncSampleBox();
+        if (stss != null) {
+            trackInfo.syncSamples = new boolean[count];
+            for (long number : stss.getSampleNumber()) {
+                if (number >= 1 && number <= count) {
+                    trackInfo.syncSamples[(int) number - 1] = true;
+                }
+            }
+        }
+        readEditList(trackBox, trackInfo, movieTimeScale);
+        return trackInfo;
+    }
+
+    // Only the first edit that shows media is used, together with an empty edit in front of it. Later edits are
+    // ignored, so a source that plays parts of its media more than once or out of order is copied as stored.
+    private static void readEditList(TrackBox trackBox, TrackInfo trackInfo, long movieTimeScale) {
+        List<EditBox> edts = trackBox.getBoxes(EditBox.class);
+        if (edts.isEmpty() || movieTimeScale <= 0) {
+            return;
+        }
+        List<EditListBox> elst = edts.get(0).getBoxes(EditListBox.class);
+        if (elst.isEmpty()) {
+            return;
+        }
+        long emptyDuration = 0;
+        for (EditListBox.Entry entry : elst.get(0).getEntries()) {
+            if (entry.getMediaTime() == -1) {
+                emptyDuration += entry.getSegmentDuration();
+            } else {
+                trackInfo.editMediaTime = entry.getMediaTime();
+                trackInfo.editStartUs = emptyDuration * 1000000L / movieTimeScale;
+                break;
+            }
+        }
+    }
+
+    private static SampleDescriptionBox detach(SampleDescriptionBox stsd) throws IOException {
+        return parseSampleDescription(getBytes(stsd));
+    }
+
+    static byte[] getBytes(SampleDescriptionBox stsd) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stsd.getBox(Channels.newChannel(stream));
+        return stream.toByteArray();
+    }
+
+    static SampleDescriptionBox parseSampleDescription(byte[] data) throws IOException {
+        IsoFile isoFile = new IsoFile(new MemoryDataSourceImpl(data));
+        List<SampleDescriptionBox> boxes = isoFile.getBoxes(SampleDescriptionBox.class);
+        if (boxes.isEmpty()) {
+            throw new IOException("can't copy sample description");
+        }
+        return boxes.get(0);
+    }
+
+    public ArrayList<TrackInfo> getTracks() {
+        return tracks;
+    }
+
+    public TrackInfo getTrack(boolean audio) {
+        for (int a = 0; a < tracks.size(); a++) {
+            TrackInfo trackInfo = tracks.get(a);
+            if (audio ? trackInfo.isAudio : "vide".equals(trackInfo.handler)) {
+                return trackInfo;
+            }
+        }
+        return null;
+    }
+
+    public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        while (count > 0) {
+            long transferred = channel.transferTo(position, count, target);
+            if (transferred <= 0) {
+                throw new IOException("unexpected end of source at " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+        inputStream.close();
+    }
+}
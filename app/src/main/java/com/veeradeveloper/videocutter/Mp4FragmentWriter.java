@@ -0,0 +1,205 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.IsoTypeWriter;
+import com.coremedia.iso.boxes.fragment.MovieFragmentBox;
+import com.coremedia.iso.boxes.fragment.MovieFragmentHeaderBox;
+import com.coremedia.iso.boxes.fragment.SampleFlags;
+import com.coremedia.iso.boxes.fragment.TrackFragmentBaseMediaDecodeTimeBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentHeaderBox;
+import com.coremedia.iso.boxes.fragment.TrackRunBox;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@TargetApi(16)
+public class Mp4FragmentWriter {
+
+    private WritableByteChannel channel;
+    private long fragmentDurationUs;
+    private long fragmentMaxBytes;
+    private boolean hasVideo;
+    private ArrayList<FragmentTrack> fragmentTracks = new ArrayList<>();
+    private long sequenceNumber = 0;
+    private long fragmentBytes = 0;
+    private SampleFlags syncSampleFlags = new SampleFlags();
+    private SampleFlags nonSyncSampleFlags = new SampleFlags();
+
+    private static class FragmentTrack {
+        private Track track;
+        private long firstPresentationTimeUs = -1;
+        private long lastPresentationTimeUs = -1;
+        private long lastDecodeTime = 0;
+        private long lastDelta;
+        private long fragmentStartUs = -1;
+        private int count = 0;
+        private long[] decodeTimes = new long[256];
+        private long[] sizes = new long[256];
+        private boolean[] syncFlags = new boolean[256];
+        private ByteBuffer data = ByteBuffer.allocateDirect(256 * 1024);
+
+        private FragmentTrack(Track track) {
+            this.track = track;
+            lastDelta = track.getSampleDurations().getLastSampleDuration();
+        }
+
+        private void ensureCapacity(int size) {
+            if (count == sizes.length) {
+                decodeTimes = Arrays.copyOf(decodeTimes, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+                syncFlags = Arrays.copyOf(syncFlags, count * 2);
+            }
+            if (data.remaining() < size) {
+                ByteBuffer newData = ByteBuffer.allocateDirect(Math.max(data.capacity() * 2, data.position() + size));
+                data.flip();
+                newData.put(data);
+                data = newData;
+            }
+        }
+    }
+
+    public Mp4FragmentWriter(WritableByteChannel writableByteChannel, long durationUs, long maxBytes) {
+        channel = writableByteChannel;
+        fragmentDurationUs = durationUs;
+        fragmentMaxBytes = maxBytes;
+        syncSampleFlags.setSampleDependsOn(2);
+        nonSyncSampleFlags.setSampleDependsOn(1);
+        nonSyncSampleFlags.setSampleIsDifferenceSample(true);
+    }
+
+    public boolean writeSampleData(Track track, ByteBuffer byteBuf, MediaCodec.BufferInfo bufferInfo, boolean isAudio) throws Exception {
+        FragmentTrack fragmentTrack = getFragmentTrack(track);
+        if (bufferInfo.presentationTimeUs < fragmentTrack.lastPresentationTimeUs) {
+            return false;
+        }
+        boolean isSyncFrame = isAudio || (bufferInfo.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0;
+
+        boolean flush = false;
+        if (fragmentBytes != 0) {
+            if (fragmentMaxBytes > 0 && fragmentBytes + bufferInfo.size > fragmentMaxBytes) {
+                flush = true;
+            } else if (fragmentDurationUs > 0 && fragmentTrack.fragmentStartUs != -1 && isSyncFrame) {
+                long elapsed = bufferInfo.presentationTimeUs - fragmentTrack.fragmentStartUs;
+                flush = elapsed >= fragmentDurationUs && (!isAudio || !hasVideo || elapsed >= fragmentDurationUs * 2);
+            }
+        }
+        if (flush) {
+            flushFragment();
+        }
+
+        if (fragmentTrack.firstPresentationTimeUs == -1) {
+            fragmentTrack.firstPresentationTimeUs = bufferInfo.presentationTimeUs;
+        }
+        long decodeTime = ((bufferInfo.presentationTimeUs - fragmentTrack.firstPresentationTimeUs) * fragmentTrack.track.getTimeScale() + 500000L) / 1000000L;
+        if (fragmentTrack.lastPresentationTimeUs != -1) {
+            fragmentTrack.lastDelta = decodeTime - fragmentTrack.lastDecodeTime;
+        }
+        fragmentTrack.lastDecodeTime = decodeTime;
+        fragmentTrack.lastPresentationTimeUs = bufferInfo.presentationTimeUs;
+        if (fragmentTrack.fragmentStartUs == -1) {
+            fragmentTrack.fragmentStartUs = bufferInfo.presentationTimeUs;
+        }
+
+        fragmentTrack.ensureCapacity(bufferInfo.size);
+        fragmentTrack.data.put(byteBuf);
+
+        int index = fragmentTrack.count++;
+        fragmentTrack.decodeTimes[index] = decodeTime;
+        fragmentTrack.sizes[index] = bufferInfo.size;
+        fragmentTrack.syncFlags[index] = isSyncFrame;
+        fragmentBytes += bufferInfo.size;
+        return flush;
+    }
+
+    private FragmentTrack getFragmentTrack(Track track) {
+        for (int a = 0; a < fragmentTracks.size(); a++) {
+            FragmentTrack fragmentTrack = fragmentTracks.get(a);
+            if (fragmentTrack.track == track) {
+                return fragmentTrack;
+            }
+        }
+        FragmentTrack fragmentTrack = new FragmentTrack(track);
+        fragmentTracks.add(fragmentTrack);
+        if (!track.isAudio()) {
+            hasVideo = true;
+        }
+        return fragmentTrack;
+    }
+
+    public void flushFragment() throws Exception {
+        if (fragmentBytes == 0) {
+            return;
+        }
+        MovieFragmentBox moof = new MovieFragmentBox();
+        MovieFragmentHeaderBox mfhd = new MovieFragmentHeaderBox();
+        mfhd.setSequenceNumber(++sequenceNumber);
+        moof.addBox(mfhd);
+
+        ArrayList<TrackRunBox> trackRuns = new ArrayList<>();
+        ArrayList<FragmentTrack> writtenTracks = new ArrayList<>();
+        for (int a = 0; a < fragmentTracks.size(); a++) {
+            FragmentTrack fragmentTrack = fragmentTracks.get(a);
+            if (fragmentTrack.count == 0) {
+                continue;
+            }
+            TrackFragmentBox traf = new TrackFragmentBox();
+            TrackFragmentHeaderBox tfhd = new TrackFragmentHeaderBox();
+            tfhd.setTrackId(fragmentTrack.track.getTrackId() + 1);
+            tfhd.setDefaultBaseIsMoof(true);
+            traf.addBox(tfhd);
+
+            TrackFragmentBaseMediaDecodeTimeBox tfdt = new TrackFragmentBaseMediaDecodeTimeBox();
+            tfdt.setVersion(1);
+            tfdt.setBaseMediaDecodeTime(fragmentTrack.decodeTimes[0]);
+            traf.addBox(tfdt);
+
+            TrackRunBox trun = new TrackRunBox();
+            trun.setDataOffsetPresent(true);
+            trun.setSampleDurationPresent(true);
+            trun.setSampleSizePresent(true);
+            trun.setSampleFlagsPresent(true);
+            List<TrackRunBox.Entry> entries = new ArrayList<>(fragmentTrack.count);
+            for (int b = 0; b < fragmentTrack.count; b++) {
+                long duration = b + 1 < fragmentTrack.count ? fragmentTrack.decodeTimes[b + 1] - fragmentTrack.decodeTimes[b] : fragmentTrack.lastDelta;
+                entries.add(new TrackRunBox.Entry(duration, fragmentTrack.sizes[b], fragmentTrack.syncFlags[b] ? syncSampleFlags : nonSyncSampleFlags, 0));
+            }
+            trun.setEntries(entries);
+            traf.addBox(trun);
+            moof.addBox(traf);
+
+            trackRuns.add(trun);
+            writtenTracks.add(fragmentTrack);
+        }
+
+        long dataOffset = moof.getSize() + 8;
+        for (int a = 0; a < trackRuns.size(); a++) {
+            trackRuns.get(a).setDataOffset((int) dataOffset);
+            dataOffset += writtenTracks.get(a).data.position();
+        }
+        moof.getBox(channel);
+
+        ByteBuffer header = ByteBuffer.allocate(8);
+        IsoTypeWriter.writeUInt32(header, 8 + fragmentBytes);
+        header.put(IsoFile.fourCCtoBytes("mdat"));
+        header.rewind();
+        channel.write(header);
+        for (int a = 0; a < writtenTracks.size(); a++) {
+            FragmentTrack fragmentTrack = writtenTracks.get(a);
+            fragmentTrack.data.flip();
+            while (fragmentTrack.data.hasRemaining()) {
+                channel.write(fragmentTrack.data);
+            }
+            fragmentTrack.data.clear();
+            fragmentTrack.count = 0;
+            fragmentTrack.fragmentStartUs = -1;
+        }
+        fragmentBytes = 0;
+    }
+}
@@ -24,6 +24,11 @@ public class Mp4Movie {
     private File cacheFile;
     private int width;
     private int height;
+    private boolean fastStart;
+    private long fragmentDurationUs;
+    private long fragmentMaxBytes;
+    private InterleavePolicy interleavePolicy;
+    private File checkpointFile;
 
     public Matrix getMatrix() {
         return matrix;
@@ -50,6 +55,47 @@ public class Mp4Movie {
         height = h;
     }
 
+    public void setFastStart(boolean value) {
+        fastStart = value;
+    }
+
+    public boolean isFastStart() {
+        return fastStart;
+    }
+
+    public void setFragmented(long durationMs, long maxBytes) {
+        fragmentDurationUs = durationMs * 1000;
+        fragmentMaxBytes = maxBytes;
+    }
+
+    public boolean isFragmented() {
+        return fragmentDurationUs > 0 || fragmentMaxBytes > 0;
+    }
+
+    public long getFragmentDurationUs() {
+        return fragmentDurationUs;
+    }
+
+    public long getFragmentMaxBytes() {
+        return fragmentMaxBytes;
+    }
+
+    public void setInterleavePolicy(InterleavePolicy policy) {
+        interleavePolicy = policy;
+    }
+
+    public InterleavePolicy getInterleavePolicy() {
+        return interleavePolicy;
+    }
+
+    public void setCheckpointFile(File file) {
+        checkpointFile = file;
+    }
+
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
     public ArrayList<Track> getTracks() {
         return tracks;
     }
@@ -66,6 +112,18 @@ public class Mp4Movie {
         track.addSample(offset, bufferInfo);
     }
 
+    public void addSample(int trackIndex, long offset, long size, long decodeTime, int compositionOffset, boolean isSyncFrame) {
+        if (trackIndex < 0 || trackIndex >= tracks.size()) {
+            return;
+        }
+        tracks.get(trackIndex).addSample(offset, size, decodeTime, compositionOffset, isSyncFrame);
+    }
+
+    public int addTrack(Mp4Demuxer.TrackInfo trackInfo) {
+        tracks.add(new Track(tracks.size(), trackInfo));
+        return tracks.size() - 1;
+    }
+
     public int addTrack(MediaFormat mediaFormat, boolean isAudio) throws Exception {
         tracks.add(new Track(tracks.size(), mediaFormat, isAudio));
         return tracks.size() - 1;
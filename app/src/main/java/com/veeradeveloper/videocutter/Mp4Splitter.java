@@ -0,0 +1,136 @@
+package com.veeradeveloper.videocutter;
+
+import java.util.Arrays;
+
+public class Mp4Splitter {
+
+    private Mp4Demuxer demuxer;
+    private MP4Builder[] builders;
+    private int[][] muxerTracks;
+    private long[][] shifts;
+    private int[] runTracks = new int[256];
+    private int[] runSamples = new int[256];
+    private int runCount;
+    private int runPart;
+
+    public Mp4Splitter(Mp4Demuxer mp4Demuxer) {
+        demuxer = mp4Demuxer;
+    }
+
+    // Splits the source at the sync samples at or before splitTimesUs (ascending) into splitTimesUs.length + 1 parts,
+    // written to movies[0..n]. The source is read once, in file order, with every sample going to the part it belongs to.
+    // Returns the presentation time of the first video sample of each part, or -1 for a part that came out empty because
+    // its split point fell inside the first GOP of the previous part; no file is created for such a part.
+    // Each part starts its decode times at zero and gets edit lists that start both tracks at its first video sample,
+    // the same way Mp4TrimCopier does for a trim.
+    public long[] split(long[] splitTimesUs, Mp4Movie[] movies) throws Exception {
+        Mp4Demuxer.TrackInfo video = demuxer.getTrack(false);
+        if (video == null) {
+            throw new IllegalStateException("source has no video track");
+        }
+        if (movies.length != splitTimesUs.length + 1) {
+            throw new IllegalArgumentException("need " + (splitTimesUs.length + 1) + " movies, got " + movies.length);
+        }
+        Mp4Demuxer.TrackInfo audio = demuxer.getTrack(true);
+        Mp4Demuxer.TrackInfo[] sources = new Mp4Demuxer.TrackInfo[]{video, audio};
+        int partsCount = movies.length;
+
+        int[][] firstSamples = new int[2][partsCount + 1];
+        long[] partStartTimes = new long[partsCount];
+        for (int a = 0; a < partsCount; a++) {
+            int first = a == 0 ? 0 : Math.max(video.findSyncSampleBefore(splitTimesUs[a - 1]), firstSamples[0][a - 1]);
+            firstSamples[0][a] = first;
+            partStartTimes[a] = first < video.samplesCount ? video.getPresentationTimeUs(first) : -1;
+            if (audio != null) {
+                firstSamples[1][a] = a == 0 ? 0 : Math.max(audio.findSyncSampleBefore(partStartTimes[a]), firstSamples[1][a - 1]);
+            }
+        }
+        firstSamples[0][partsCount] = video.samplesCount;
+        firstSamples[1][partsCount] = audio != null ? audio.samplesCount : 0;
+
+        builders = new MP4Builder[partsCount];
+        muxerTracks = new int[partsCount][2];
+        shifts = new long[partsCount][2];
+        try {
+            for (int a = 0; a < partsCount; a++) {
+                if (firstSamples[0][a] == firstSamples[0][a + 1]) {
+                    partStartTimes[a] = -1;
+                    continue;
+                }
+                builders[a] = new MP4Builder().createMovie(movies[a]);
+                muxerTracks[a][0] = builders[a].addTrack(video);
+                muxerTracks[a][1] = audio != null ? builders[a].addTrack(audio) : -1;
+                int videoFirst = firstSamples[0][a];
+                shifts[a][0] = -video.decodeTimes[videoFirst];
+                builders[a].setEditMediaTime(muxerTracks[a][0], video.compositionOffsets != null ? video.compositionOffsets[videoFirst] : 0);
+                int audioFirst = firstSamples[1][a];
+                if (audio != null && audioFirst < audio.samplesCount) {
+                    shifts[a][1] = -audio.decodeTimes[audioFirst];
+                    builders[a].setEditMediaTime(muxerTracks[a][1], audio.getMediaTime(partStartTimes[a]) - audio.decodeTimes[audioFirst]);
+                }
+            }
+
+            int[] next = new int[2];
+            int[] end = new int[]{video.samplesCount, audio != null ? audio.samplesCount : 0};
+            int[] parts = new int[2];
+            long runStart = -1;
+            long runEnd = -1;
+            while (true) {
+                int track = -1;
+                for (int a = 0; a < 2; a++) {
+                    if (next[a] < end[a] && (track == -1 || sources[a].offsets[next[a]] < sources[track].offsets[next[track]])) {
+                        track = a;
+                    }
+                }
+                if (track == -1) {
+                    break;
+                }
+                int sample = next[track]++;
+                while (sample >= firstSamples[track][parts[track] + 1]) {
+                    parts[track]++;
+                }
+                int part = parts[track];
+                if (builders[part] == null) {
+                    continue;
+                }
+                long offset = sources[track].offsets[sample];
+                if (offset != runEnd || part != runPart) {
+                    flushRun(sources, runStart, runEnd);
+                    runStart = offset;
+                    runPart = part;
+                }
+                runEnd = offset + sources[track].sizes[sample];
+                if (runCount == runSamples.length) {
+                    runTracks = Arrays.copyOf(runTracks, runCount * 2);
+                    runSamples = Arrays.copyOf(runSamples, runCount * 2);
+                }
+                runTracks[runCount] = track;
+                runSamples[runCount] = sample;
+                runCount++;
+            }
+            flushRun(sources, runStart, runEnd);
+        } finally {
+            for (int a = 0; a < partsCount; a++) {
+                if (builders[a] != null) {
+                    builders[a].finishMovie(false);
+                }
+            }
+        }
+        return partStartTimes;
+    }
+
+    private void flushRun(Mp4Demuxer.TrackInfo[] sources, long runStart, long runEnd) throws Exception {
+        if (runCount == 0) {
+            return;
+        }
+        MP4Builder builder = builders[runPart];
+        long rangeOffset = builder.writeSampleRange(demuxer, runStart, runEnd - runStart);
+        for (int a = 0; a < runCount; a++) {
+            Mp4Demuxer.TrackInfo source = sources[runTracks[a]];
+            int sample = runSamples[a];
+            int compositionOffset = source.compositionOffsets != null ? source.compositionOffsets[sample] : 0;
+            builder.addSample(muxerTracks[runPart][runTracks[a]], rangeOffset + source.offsets[sample] - runStart, source.sizes[sample], source.decodeTimes[sample] + shifts[runPart][runTracks[a]], compositionOffset, source.isSync(sample));
+        }
+        runCount = 0;
+    }
+}
@@ -0,0 +1,144 @@
+package com.veeradeveloper.videocutter;
+
+import java.util.Arrays;
+
+public class Mp4TrimCopier {
+
+    private Mp4Demuxer demuxer;
+    private MP4Builder builder;
+    private int[] runTracks = new int[256];
+    private int[] runSamples = new int[256];
+    private int runCount;
+    private long rangesCount;
+
+    public Mp4TrimCopier(Mp4Demuxer mp4Demuxer, MP4Builder mp4Builder) {
+        demuxer = mp4Demuxer;
+        builder = mp4Builder;
+    }
+
+    // Copies video from the last sync sample at or before startUs and audio from the first copied video frame,
+    // both until endUs (or the end of the file if endUs < 0). Returns the presentation time of the first video sample.
+    // Times are on the source's edit list timeline, and the output gets edit lists that start both tracks at that
+    // video sample, so B-frame delays and audio priming stay in sync after the trim.
+    public long copy(long startUs, long endUs) throws Exception {
+        return copy(new CutList(startUs, endUs));
+    }
+
+    // Copies every segment of the cut list the same way, shifting decode times so the segments follow each other.
+    public long copy(CutList cutList) throws Exception {
+        Mp4Demuxer.TrackInfo video = demuxer.getTrack(false);
+        if (video == null) {
+            throw new IllegalStateException("source has no video track");
+        }
+        Mp4Demuxer.TrackInfo audio = demuxer.getTrack(true);
+
+        Mp4Demuxer.TrackInfo[] sources = new Mp4Demuxer.TrackInfo[]{video, audio};
+        int[] muxerTracks = new int[]{builder.addTrack(video), audio != null ? builder.addTrack(audio) : -1};
+        int[] next = new int[2];
+        int[] end = new int[2];
+        long[] shifts = new long[2];
+
+        long videoStartUs = -1;
+        for (int segment = 0; segment < cutList.getSegmentsCount(); segment++) {
+            long startUs = cutList.getStart(segment);
+            long endUs = cutList.getEnd(segment);
+            int videoFirst = Math.max(startUs > 0 ? video.findSyncSampleBefore(startUs) : 0, end[0]);
+            int videoEnd = findEndSample(video, videoFirst, endUs);
+            if (videoFirst >= videoEnd) {
+                continue;
+            }
+            long segmentStartUs = video.getPresentationTimeUs(videoFirst);
+            boolean firstSegment = videoStartUs == -1;
+            if (firstSegment) {
+                videoStartUs = segmentStartUs;
+                builder.setEditMediaTime(muxerTracks[0], video.compositionOffsets != null ? video.compositionOffsets[videoFirst] : 0);
+            }
+            shifts[0] = getShift(video, videoFirst, end[0], shifts[0]);
+            next[0] = videoFirst;
+            end[0] = videoEnd;
+            if (audio != null) {
+                int audioFirst = Math.max(audio.findSyncSampleBefore(segmentStartUs), end[1]);
+                if (firstSegment && audioFirst < audio.samplesCount) {
+                    builder.setEditMediaTime(muxerTracks[1], audio.getMediaTime(segmentStartUs) - audio.decodeTimes[audioFirst]);
+                }
+                shifts[1] = getShift(audio, audioFirst, end[1], shifts[1]);
+                next[1] = audioFirst;
+                end[1] = findEndSample(audio, audioFirst, endUs);
+            }
+            copySegment(sources, muxerTracks, next, end, shifts);
+        }
+        return videoStartUs;
+    }
+
+    // Decode time offset that makes sample "first" follow directly after sample "previousEnd - 1" of the last segment.
+    private static long getShift(Mp4Demuxer.TrackInfo trackInfo, int first, int previousEnd, long previousShift) {
+        if (previousEnd == 0 || first >= trackInfo.samplesCount) {
+            return previousShift;
+        }
+        long previousEndTime = trackInfo.decodeTimes[previousEnd - 1] + trackInfo.getSampleDuration(previousEnd - 1) + previousShift;
+        return previousEndTime - trackInfo.decodeTimes[first];
+    }
+
+    private void copySegment(Mp4Demuxer.TrackInfo[] sources, int[] muxerTracks, int[] next, int[] end, long[] shifts) throws Exception {
+        long runStart = -1;
+        long runEnd = -1;
+        while (true) {
+            int track = -1;
+            for (int a = 0; a < 2; a++) {
+                if (next[a] < end[a] && (track == -1 || sources[a].offsets[next[a]] < sources[track].offsets[next[track]])) {
+                    track = a;
+                }
+            }
+            if (track == -1) {
+                break;
+            }
+            int sample = next[track]++;
+            long offset = sources[track].offsets[sample];
+            if (offset != runEnd) {
+                flushRun(sources, muxerTracks, shifts, runStart, runEnd);
+                runStart = offset;
+            }
+            runEnd = offset + sources[track].sizes[sample];
+            if (runCount == runSamples.length) {
+                runTracks = Arrays.copyOf(runTracks, runCount * 2);
+                runSamples = Arrays.copyOf(runSamples, runCount * 2);
+            }
+            runTracks[runCount] = track;
+            runSamples[runCount] = sample;
+            runCount++;
+        }
+        flushRun(sources, muxerTracks, shifts, runStart, runEnd);
+    }
+
+    private void flushRun(Mp4Demuxer.TrackInfo[] sources, int[] muxerTracks, long[] shifts, long runStart, long runEnd) throws Exception {
+        if (runCount == 0) {
+            return;
+        }
+        long rangeOffset = builder.writeSampleRange(demuxer, runStart, runEnd - runStart);
+        for (int a = 0; a < runCount; a++) {
+            int track = runTracks[a];
+            Mp4Demuxer.TrackInfo source = sources[track];
+            int sample = runSamples[a];
+            int compositionOffset = source.compositionOffsets != null ? source.compositionOffsets[sample] : 0;
+            builder.addSample(muxerTracks[track], rangeOffset + source.offsets[sample] - runStart, source.sizes[sample], source.decodeTimes[sample] + shifts[track], compositionOffset, source.isSync(sample));
+        }
+        runCount = 0;
+        rangesCount++;
+    }
+
+    private static int findEndSample(Mp4Demuxer.TrackInfo trackInfo, int first, long endUs) {
+        if (endUs < 0) {
+            return trackInfo.samplesCount;
+        }
+        for (int a = first; a < trackInfo.samplesCount; a++) {
+            if (trackInfo.getPresentationTimeUs(a) >= endUs) {
+                return a;
+            }
+        }
+        return trackInfo.samplesCount;
+    }
+
+    public long getRangesCount() {
+        return rangesCount;
+    }
+}
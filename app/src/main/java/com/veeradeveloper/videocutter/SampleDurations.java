@@ -0,0 +1,56 @@
+package com.veeradeveloper.videocutter;
+
+import com.coremedia.iso.boxes.TimeToSampleBox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SampleDurations {
+    private long[] counts = new long[64];
+    private long[] deltas = new long[64];
+    private int runsCount = 0;
+    private long lastSampleDuration;
+    private boolean hasLastSample = false;
+
+    public SampleDurations(long defaultDuration) {
+        lastSampleDuration = defaultDuration;
+    }
+
+    public void addSample(long deltaFromPrevious) {
+        if (hasLastSample) {
+            if (runsCount > 0 && deltas[runsCount - 1] == deltaFromPrevious) {
+                counts[runsCount - 1]++;
+            } else {
+                if (runsCount == counts.length) {
+                    counts = Arrays.copyOf(counts, runsCount * 2);
+                    deltas = Arrays.copyOf(deltas, runsCount * 2);
+                }
+                counts[runsCount] = 1;
+                deltas[runsCount] = deltaFromPrevious;
+                runsCount++;
+            }
+        }
+        hasLastSample = true;
+    }
+
+    public long getLastSampleDuration() {
+        return lastSampleDuration;
+    }
+
+    public List<TimeToSampleBox.Entry> getEntries() {
+        List<TimeToSampleBox.Entry> entries = new ArrayList<>(runsCount + 1);
+        for (int a = 0; a < runsCount; a++) {
+            entries.add(new TimeToSampleBox.Entry(counts[a], deltas[a]));
+        }
+        if (hasLastSample) {
+            if (runsCount > 0 && deltas[runsCount - 1] == lastSampleDuration) {
+                TimeToSampleBox.Entry lastEntry = entries.get(runsCount - 1);
+                lastEntry.setCount(lastEntry.getCount() + 1);
+            } else {
+                entries.add(new TimeToSampleBox.Entry(1, lastSampleDuration));
+            }
+        }
+        return entries;
+    }
+}
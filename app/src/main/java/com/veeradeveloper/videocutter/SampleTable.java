@@ -0,0 +1,105 @@
+package com.veeradeveloper.videocutter;
+
+import com.coremedia.iso.boxes.SampleToChunkBox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SampleTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] sizes = new long[INITIAL_CAPACITY];
+    private int count = 0;
+    private int[] syncSamples = null;
+    private int syncCount = 0;
+
+    private long[] chunkOffsets = new long[INITIAL_CAPACITY / 8];
+    private int chunksCount = 0;
+    private long lastSampleEnd = -1;
+    private int currentChunkSamples = 0;
+
+    private long[] stscFirstChunks = new long[64];
+    private long[] stscSamplesPerChunk = new long[64];
+    private int stscCount = 0;
+
+    public SampleTable(boolean hasSyncSamples) {
+        if (hasSyncSamples) {
+            syncSamples = new int[INITIAL_CAPACITY / 8];
+        }
+    }
+
+    public void addSample(long offset, long size, boolean isSync) {
+        if (offset != lastSampleEnd) {
+            closeChunk();
+            if (chunksCount == chunkOffsets.length) {
+                chunkOffsets = Arrays.copyOf(chunkOffsets, chunksCount * 2);
+            }
+            chunkOffsets[chunksCount++] = offset;
+        }
+        currentChunkSamples++;
+        lastSampleEnd = offset + size;
+
+        if (count == sizes.length) {
+            sizes = Arrays.copyOf(sizes, count + (count >> 1));
+        }
+        sizes[count++] = size;
+        if (syncSamples != null && isSync) {
+            if (syncCount == syncSamples.length) {
+                syncSamples = Arrays.copyOf(syncSamples, syncCount + (syncCount >> 1) + 1);
+            }
+            syncSamples[syncCount++] = count;
+        }
+    }
+
+    private void closeChunk() {
+        if (currentChunkSamples == 0) {
+            return;
+        }
+        if (stscCount == 0 || stscSamplesPerChunk[stscCount - 1] != currentChunkSamples) {
+            if (stscCount == stscFirstChunks.length) {
+                stscFirstChunks = Arrays.copyOf(stscFirstChunks, stscCount * 2);
+                stscSamplesPerChunk = Arrays.copyOf(stscSamplesPerChunk, stscCount * 2);
+            }
+            stscFirstChunks[stscCount] = chunksCount;
+            stscSamplesPerChunk[stscCount] = currentChunkSamples;
+            stscCount++;
+        }
+        currentChunkSamples = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long[] getSizes() {
+        return count == sizes.length ? sizes : Arrays.copyOf(sizes, count);
+    }
+
+    public long[] getChunkOffsets() {
+        return Arrays.copyOf(chunkOffsets, chunksCount);
+    }
+
+    public List<SampleToChunkBox.Entry> getSampleToChunkEntries() {
+        List<SampleToChunkBox.Entry> entries = new ArrayList<>(stscCount + 1);
+        for (int a = 0; a < stscCount; a++) {
+            entries.add(new SampleToChunkBox.Entry(stscFirstChunks[a], stscSamplesPerChunk[a], 1));
+        }
+        if (currentChunkSamples != 0 && (stscCount == 0 || stscSamplesPerChunk[stscCount - 1] != currentChunkSamples)) {
+            entries.add(new SampleToChunkBox.Entry(chunksCount, currentChunkSamples, 1));
+        }
+        return entries;
+    }
+
+    public int getSyncSampleCount() {
+        return syncCount;
+    }
+
+    public long[] getSyncSamples() {
+        long[] result = new long[syncCount];
+        for (int a = 0; a < syncCount; a++) {
+            result[a] = syncSamples[a];
+        }
+        return result;
+    }
+}
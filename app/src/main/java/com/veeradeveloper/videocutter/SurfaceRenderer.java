@@ -0,0 +1,27 @@
+package com.veeradeveloper.videocutter;
+
+import android.annotation.TargetApi;
+
+@TargetApi(18)
+public class SurfaceRenderer implements FrameRenderer {
+
+    private OutputSurface outputSurface;
+    private InputSurface inputSurface;
+
+    public SurfaceRenderer(OutputSurface decoderSurface, InputSurface encoderSurface) {
+        outputSurface = decoderSurface;
+        inputSurface = encoderSurface;
+    }
+
+    @Override
+    public void awaitFrame() {
+        outputSurface.awaitNewImage();
+    }
+
+    @Override
+    public void drawFrame(long presentationTimeNs) {
+        outputSurface.drawImage(false);
+        inputSurface.setPresentationTime(presentationTimeNs);
+        inputSurface.swapBuffers();
+    }
+}
@@ -0,0 +1,84 @@
+package com.veeradeveloper.videocutter;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory trace of the conversion hot loops. Events below the current level return after one field read;
+// the rest are stored in a fixed ring without locks, allocations or string building (messages are constants,
+// values are formatted only when dumped), and reach logcat only when dump() is called, after a failure.
+public class Tracer {
+
+    public static final int LEVEL_VERBOSE = 0;
+    public static final int LEVEL_DEBUG = 1;
+    public static final int LEVEL_INFO = 2;
+    public static final int LEVEL_WARN = 3;
+    public static final int LEVEL_NONE = 4;
+
+    private static final int CAPACITY = 1024;
+    private static final int MASK = CAPACITY - 1;
+    private static final long NO_VALUE = Long.MIN_VALUE;
+
+    public static volatile int level = LEVEL_DEBUG;
+
+    private static final AtomicLong sequence = new AtomicLong();
+    private static final long[] times = new long[CAPACITY];
+    private static final String[] messages = new String[CAPACITY];
+    private static final long[] values1 = new long[CAPACITY];
+    private static final long[] values2 = new long[CAPACITY];
+    private static final long[] threads = new long[CAPACITY];
+
+    public static boolean isEnabled(int eventLevel) {
+        return eventLevel >= level;
+    }
+
+    public static void trace(int eventLevel, String message) {
+        if (eventLevel >= level) {
+            add(message, NO_VALUE, NO_VALUE);
+        }
+    }
+
+    public static void trace(int eventLevel, String message, long value) {
+        if (eventLevel >= level) {
+            add(message, value, NO_VALUE);
+        }
+    }
+
+    public static void trace(int eventLevel, String message, long value1, long value2) {
+        if (eventLevel >= level) {
+            add(message, value1, value2);
+        }
+    }
+
+    private static void add(String message, long value1, long value2) {
+        int index = (int) (sequence.getAndIncrement() & MASK);
+        times[index] = System.nanoTime();
+        messages[index] = message;
+        values1[index] = value1;
+        values2[index] = value2;
+        threads[index] = Thread.currentThread().getId();
+    }
+
+    // Writes the retained events, oldest first, to logcat. Events recorded while dumping may show up torn.
+    public static void dump(String reason) {
+        long end = sequence.get();
+        long start = Math.max(0, end - CAPACITY);
+        Log.e("tmessages", "trace dump (" + reason + "), " + (end - start) + " of " + end + " events");
+        long lastTime = 0;
+        StringBuilder line = new StringBuilder();
+        for (long a = start; a < end; a++) {
+            int index = (int) (a & MASK);
+            long time = times[index];
+            line.setLength(0);
+            line.append('+').append(lastTime != 0 ? (time - lastTime) / 1000 : 0).append("us [").append(threads[index]).append("] ").append(messages[index]);
+            if (values1[index] != NO_VALUE) {
+                line.append(' ').append(values1[index]);
+            }
+            if (values2[index] != NO_VALUE) {
+                line.append(' ').append(values2[index]);
+            }
+            Log.e("tmessages", line.toString());
+            lastTime = time;
+        }
+    }
+}
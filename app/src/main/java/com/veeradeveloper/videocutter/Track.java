@@ -13,6 +13,8 @@ import android.media.MediaCodec;
 import android.media.MediaFormat;
 
 import com.coremedia.iso.boxes.AbstractMediaHeaderBox;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.NullMediaHeaderBox;
 import com.coremedia.iso.boxes.SampleDescriptionBox;
 import com.coremedia.iso.boxes.SoundMediaHeaderBox;
 import com.coremedia.iso.boxes.VideoMediaHeaderBox;
@@ -29,28 +31,30 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 @TargetApi(16)
 public class Track {
     private long trackId = 0;
-    private ArrayList<Sample> samples = new ArrayList<>();
+    private SampleTable samples;
     private long duration = 0;
     private String handler;
     private AbstractMediaHeaderBox headerBox = null;
     private SampleDescriptionBox sampleDescriptionBox = null;
-    private LinkedList<Integer> syncSamples = null;
     private int timeScale;
     private Date creationTime = new Date();
     private int height;
     private int width;
     private float volume = 0;
-    private ArrayList<Long> sampleDurations = new ArrayList<>();
+    private SampleDurations sampleDurations;
     private boolean isAudio = false;
     private static Map<Integer, Integer> samplingFrequencyIndexMap = new HashMap<>();
     private long lastPresentationTimeUs = 0;
+    private long lastDecodeTime = 0;
     private boolean first = true;
+    private List<CompositionTimeToSample.Entry> compositionOffsets = null;
+    private long editMediaTime = 0;
 
     static {
         samplingFrequencyIndexMap.put(96000, 0x0);
@@ -71,12 +75,12 @@ public class Track {
         trackId = id;
         isAudio = audio;
         if (!isAudio) {
-            sampleDurations.add((long) 3015);
+            sampleDurations = new SampleDurations(3015);
             duration = 3015;
             width = format.getInteger(MediaFormat.KEY_WIDTH);
             height = format.getInteger(MediaFormat.KEY_HEIGHT);
             timeScale = 90000;
-            syncSamples = new LinkedList<>();
+            samples = new SampleTable(true);
             handler = "vide";
             headerBox = new VideoMediaHeaderBox();
             sampleDescriptionBox = new SampleDescriptionBox();
@@ -135,8 +139,9 @@ public class Track {
                 sampleDescriptionBox.addBox(visualSampleEntry);
             }
         } else {
-            sampleDurations.add((long) 1024);
+            sampleDurations = new SampleDurations(1024);
             duration = 1024;
+            samples = new SampleTable(false);
             volume = 1;
             timeScale = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
             handler = "soun";
@@ -179,6 +184,30 @@ public class Track {
         }
     }
 
+    public Track(int id, Mp4Demuxer.TrackInfo trackInfo) {
+        trackId = id;
+        isAudio = trackInfo.isAudio;
+        handler = trackInfo.handler;
+        timeScale = (int) trackInfo.timeScale;
+        width = trackInfo.width;
+        height = trackInfo.height;
+        volume = trackInfo.volume;
+        sampleDescriptionBox = trackInfo.sampleDescriptionBox;
+        sampleDurations = new SampleDurations(trackInfo.lastSampleDuration);
+        duration = trackInfo.lastSampleDuration;
+        samples = new SampleTable(trackInfo.syncSamples != null);
+        if ("vide".equals(handler)) {
+            headerBox = new VideoMediaHeaderBox();
+        } else if (isAudio) {
+            headerBox = new SoundMediaHeaderBox();
+        } else {
+            headerBox = new NullMediaHeaderBox();
+        }
+        if (trackInfo.compositionOffsets != null) {
+            compositionOffsets = new ArrayList<>();
+        }
+    }
+
     public long getTrackId() {
         return trackId;
     }
@@ -189,21 +218,37 @@ public class Track {
             return;
         }
         boolean isSyncFrame = !isAudio && (bufferInfo.flags & MediaCodec.BUFFER_FLAG_SYNC_FRAME) != 0;
-        samples.add(new Sample(offset, bufferInfo.size));
-        if (syncSamples != null && isSyncFrame) {
-            syncSamples.add(samples.size());
-        }
+        samples.addSample(offset, bufferInfo.size, isSyncFrame);
 
         delta = (delta * timeScale + 500000L) / 1000000L;
         lastPresentationTimeUs = bufferInfo.presentationTimeUs;
+        sampleDurations.addSample(delta);
+        if (!first) {
+            duration += delta;
+        }
+        first = false;
+    }
+
+    public void addSample(long offset, long size, long decodeTime, int compositionOffset, boolean isSyncFrame) {
+        samples.addSample(offset, size, isSyncFrame);
+        long delta = decodeTime - lastDecodeTime;
+        lastDecodeTime = decodeTime;
+        sampleDurations.addSample(delta);
         if (!first) {
-            sampleDurations.add(sampleDurations.size() - 1, delta);
             duration += delta;
         }
         first = false;
+        if (compositionOffsets != null) {
+            CompositionTimeToSample.Entry last = compositionOffsets.isEmpty() ? null : compositionOffsets.get(compositionOffsets.size() - 1);
+            if (last != null && last.getOffset() == compositionOffset) {
+                last.setCount(last.getCount() + 1);
+            } else {
+                compositionOffsets.add(new CompositionTimeToSample.Entry(1, compositionOffset));
+            }
+        }
     }
 
-    public ArrayList<Sample> getSamples() {
+    public SampleTable getSamples() {
         return samples;
     }
 
@@ -224,14 +269,10 @@ public class Track {
     }
 
     public long[] getSyncSamples() {
-        if (syncSamples == null || syncSamples.isEmpty()) {
+        if (samples.getSyncSampleCount() == 0) {
             return null;
         }
-        long[] returns = new long[syncSamples.size()];
-        for (int i = 0; i < syncSamples.size(); i++) {
-            returns[i] = syncSamples.get(i);
-        }
-        return returns;
+        return samples.getSyncSamples();
     }
 
     public int getTimeScale() {
@@ -254,7 +295,20 @@ public class Track {
         return volume;
     }
 
-    public ArrayList<Long> getSampleDurations() {
+    // Media time the track starts to play at, or if negative, how long the track waits before its first sample.
+    public void setEditMediaTime(long mediaTime) {
+        editMediaTime = mediaTime;
+    }
+
+    public long getEditMediaTime() {
+        return editMediaTime;
+    }
+
+    public List<CompositionTimeToSample.Entry> getCompositionOffsets() {
+        return compositionOffsets;
+    }
+
+    public SampleDurations getSampleDurations() {
         return sampleDurations;
     }
 
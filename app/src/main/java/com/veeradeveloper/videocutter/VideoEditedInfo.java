@@ -20,6 +20,30 @@ public class VideoEditedInfo {
     public int resultHeight;
     public int bitrate;
     public String originalPath;
+    // re-encode the frames before the first sync sample instead of starting at the previous one; off by default, it
+    // only keeps the head when the device encoder reproduces the source SPS/PPS exactly
+    public boolean smartCut;
+    public CutList cutList;
+    public long[] splitTimes;
+
+    public CutList getCutList() {
+        if (cutList != null && cutList.getSegmentsCount() != 0) {
+            return cutList;
+        }
+        CutList list = new CutList(startTime, endTime);
+        if (list.getSegmentsCount() == 0) {
+            list.addSegment(startTime, -1);
+        }
+        return list;
+    }
+
+    public void setSplitDuration(long partDurationUs, long durationUs) {
+        int count = partDurationUs > 0 ? (int) ((durationUs - 1) / partDurationUs) : 0;
+        splitTimes = new long[Math.max(count, 0)];
+        for (int a = 0; a < splitTimes.length; a++) {
+            splitTimes[a] = (a + 1) * partDurationUs;
+        }
+    }
 
     public String getString() {
         return String.format(Locale.US, "-1_%d_%d_%d_%d_%d_%d_%d_%d_%s", startTime, endTime, rotationValue, originalWidth, originalHeight, bitrate, resultWidth, resultHeight, originalPath);
@@ -10,6 +10,7 @@ package com.veeradeveloper.videocutter;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.app.ProgressDialog;
 import android.content.res.Configuration;
 import android.graphics.SurfaceTexture;
 import android.media.MediaPlayer;
@@ -555,7 +556,7 @@ public class VideoEditorActivity extends Activity implements TextureView.Surface
     }
 
 
-    protected static class DelayedMessage {
+    protected static class DelayedMessage extends ConvertMessage {
         public TLObject sendRequest;
         public TLRPC.TL_decryptedMessage sendEncryptedRequest;
         public int type;
@@ -566,5 +567,9 @@ public class VideoEditorActivity extends Activity implements TextureView.Surface
         public MessageObject obj;
         public TLRPC.EncryptedChat encryptedChat;
         public VideoEditedInfo videoEditedInfo;
+        // UI state of the conversion of this message, so concurrent conversions don't share one dialog
+        public View view;
+        public ProgressDialog progressDialog;
+        public volatile boolean firstWrite = true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.veeradeveloper.videocutter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+
+public class WriteBehindChannel implements WritableByteChannel {
+
+    private static final int BUFFER_SIZE = 512 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final ArrayList<ByteBuffer> bufferPool = new ArrayList<>();
+
+    private FileChannel fileChannel;
+    private ByteBuffer buffer;
+    private long bufferStart;
+    private ByteBuffer[] gatherBuffers = new ByteBuffer[2];
+    private long writeCalls = 0;
+
+    public WriteBehindChannel(FileChannel channel) throws IOException {
+        fileChannel = channel;
+        bufferStart = channel.position();
+        synchronized (bufferPool) {
+            if (!bufferPool.isEmpty()) {
+                buffer = bufferPool.remove(bufferPool.size() - 1);
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        buffer.clear();
+    }
+
+    public long position() {
+        return bufferStart + buffer.position();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int count = src.remaining();
+        if (count <= buffer.remaining()) {
+            buffer.put(src);
+        } else {
+            gatherBuffers[0] = buffer;
+            gatherBuffers[1] = src;
+            buffer.flip();
+            drain(2);
+            gatherBuffers[1] = null;
+        }
+        return count;
+    }
+
+    public void transferFrom(Mp4Demuxer demuxer, long position, long count) throws IOException {
+        flush();
+        demuxer.transferTo(position, count, fileChannel);
+        bufferStart += count;
+        writeCalls++;
+    }
+
+    public void writeAt(long position, ByteBuffer src) throws IOException {
+        if (position >= bufferStart) {
+            int oldPosition = buffer.position();
+            buffer.position((int) (position - bufferStart));
+            buffer.put(src);
+            buffer.position(Math.max(oldPosition, buffer.position()));
+        } else {
+            if (position + src.remaining() > bufferStart) {
+                flush();
+            }
+            while (src.hasRemaining()) {
+                position += fileChannel.write(src, position);
+                writeCalls++;
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        gatherBuffers[0] = buffer;
+        drain(1);
+    }
+
+    private void drain(int count) throws IOException {
+        long remaining = 0;
+        for (int a = 0; a < count; a++) {
+            remaining += gatherBuffers[a].remaining();
+        }
+        bufferStart += remaining;
+        while (remaining > 0) {
+            remaining -= fileChannel.write(gatherBuffers, 0, count);
+            writeCalls++;
+        }
+        buffer.clear();
+    }
+
+    public long getWriteCalls() {
+        return writeCalls;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return fileChannel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        synchronized (bufferPool) {
+            if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+                bufferPool.add(buffer);
+            }
+        }
+        buffer = null;
+    }
+}
@@ -0,0 +1,90 @@
+package com.veeradeveloper.videocutter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AnnexBConverterTest {
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] result = new byte[buffer.remaining()];
+        buffer.duplicate().get(result);
+        return result;
+    }
+
+    @Test
+    public void fourByteStartCodes_areRewrittenInPlace() throws Exception {
+        byte[] sample = {0, 0, 0, 1, 0x67, 1, 2, 0, 0, 0, 1, 0x68, 3, 0, 0, 0, 1, 0x65, 4, 5, 6};
+        ByteBuffer buffer = ByteBuffer.allocate(sample.length + 2);
+        buffer.position(2);
+        buffer.put(sample);
+        ByteBuffer result = new AnnexBConverter().convert(buffer, 2, sample.length);
+        assertSame(buffer, result);
+        assertArrayEquals(new byte[]{0, 0, 0, 3, 0x67, 1, 2, 0, 0, 0, 2, 0x68, 3, 0, 0, 0, 4, 0x65, 4, 5, 6}, toArray(result));
+    }
+
+    @Test
+    public void threeByteStartCodes_areCopied() throws Exception {
+        byte[] sample = {0, 0, 1, 0x67, 1, 2, 0, 0, 1, 0x65, 3};
+        ByteBuffer result = new AnnexBConverter().convert(ByteBuffer.wrap(sample), 0, sample.length);
+        assertArrayEquals(new byte[]{0, 0, 0, 3, 0x67, 1, 2, 0, 0, 0, 2, 0x65, 3}, toArray(result));
+    }
+
+    @Test
+    public void lengthPrefixedSample_isNotScanned() throws Exception {
+        // the second NAL unit has a length of 0x10001, so its prefix reads 00 01 00 01
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 5 + 4 + 0x10001);
+        buffer.putInt(5);
+        buffer.put(new byte[]{0x67, 0, 0, 1, 2});
+        buffer.putInt(0x10001);
+        buffer.put((byte) 0x65);
+        buffer.put(new byte[]{0, 0, 1, 0x41});
+        byte[] sample = buffer.array().clone();
+        ByteBuffer result = new AnnexBConverter().convert(buffer, 0, sample.length);
+        assertArrayEquals(sample, toArray(result));
+    }
+
+    @Test
+    public void lengthPrefixLikeAStartCode_isNotScanned() throws Exception {
+        // a NAL unit of 300 bytes has the prefix 00 00 01 2c, which also reads as a 3-byte start code
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 300);
+        buffer.putInt(300);
+        buffer.put((byte) 0x65);
+        for (int a = 1; a < 300; a++) {
+            buffer.put((byte) (a % 7 + 1));
+        }
+        byte[] sample = buffer.array().clone();
+        ByteBuffer result = new AnnexBConverter().convert(buffer, 0, sample.length);
+        assertArrayEquals(sample, toArray(result));
+    }
+
+    @Test
+    public void lengthPrefixesLikeStartCodes_areNotScanned() throws Exception {
+        // 256 and 511 byte NAL units: both prefixes begin with 00 00 01
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 256 + 4 + 511);
+        buffer.putInt(256);
+        buffer.put((byte) 0x65);
+        buffer.position(4 + 256);
+        buffer.putInt(511);
+        buffer.put((byte) 0x41);
+        byte[] sample = buffer.array().clone();
+        ByteBuffer result = new AnnexBConverter().convert(buffer, 0, sample.length);
+        assertArrayEquals(sample, toArray(result));
+    }
+
+    @Test
+    public void unknownSample_getsOneLengthPrefix() throws Exception {
+        byte[] sample = {1, 2, 3, 4, 0x65, 5, 6};
+        ByteBuffer result = new AnnexBConverter().convert(ByteBuffer.wrap(sample), 0, sample.length);
+        assertArrayEquals(new byte[]{0, 0, 0, 3, 0x65, 5, 6}, toArray(result));
+    }
+
+    @Test
+    public void shortSample_isLeftAlone() throws Exception {
+        byte[] sample = {0, 0, 1};
+        ByteBuffer result = new AnnexBConverter().convert(ByteBuffer.wrap(sample), 0, sample.length);
+        assertArrayEquals(sample, toArray(result));
+    }
+}
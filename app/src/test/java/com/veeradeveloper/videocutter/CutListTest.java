@@ -0,0 +1,55 @@
+package com.veeradeveloper.videocutter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CutListTest {
+
+    @Test
+    public void segments_areSortedAndMerged() throws Exception {
+        CutList cutList = new CutList();
+        cutList.addSegment(5000000, 6000000);
+        cutList.addSegment(1000000, 2000000);
+        cutList.addSegment(1500000, 3000000);
+        cutList.addSegment(3000000, 4000000);
+        assertEquals(2, cutList.getSegmentsCount());
+        assertEquals(1000000, cutList.getStart(0));
+        assertEquals(4000000, cutList.getEnd(0));
+        assertEquals(5000000, cutList.getStart(1));
+        assertEquals(6000000, cutList.getEnd(1));
+        assertEquals(4000000, cutList.getDuration());
+    }
+
+    @Test
+    public void emptyRanges_areIgnored() throws Exception {
+        CutList cutList = new CutList();
+        cutList.addSegment(2000000, 2000000);
+        cutList.addSegment(3000000, 1000000);
+        assertEquals(0, cutList.getSegmentsCount());
+    }
+
+    @Test
+    public void openEnd_keepsEverythingAfterItsStart() throws Exception {
+        CutList cutList = new CutList(2000000, -1);
+        cutList.addSegment(4000000, 5000000);
+        cutList.addSegment(-1000000, 1000000);
+        assertEquals(2, cutList.getSegmentsCount());
+        assertEquals(0, cutList.getStart(0));
+        assertEquals(2000000, cutList.getStart(1));
+        assertEquals(-1, cutList.getEnd(1));
+        assertTrue(cutList.isBeforeEnd(1, Long.MAX_VALUE));
+        assertEquals(-1, cutList.getDuration());
+    }
+
+    @Test
+    public void outputTime_closesTheGaps() throws Exception {
+        CutList cutList = new CutList(1000000, 2000000);
+        cutList.addSegment(5000000, 7000000);
+        assertEquals(1500000, cutList.getOutputTime(0, 1500000));
+        assertEquals(2000000, cutList.getOutputTime(1, 5000000));
+        assertEquals(3500000, cutList.getOutputTime(1, 6500000));
+        assertTrue(cutList.isBeforeEnd(0, 1999999));
+        assertFalse(cutList.isBeforeEnd(0, 2000000));
+    }
+}
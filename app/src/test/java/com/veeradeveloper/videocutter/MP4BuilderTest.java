@@ -0,0 +1,138 @@
+package com.veeradeveloper.videocutter;
+
+import android.media.MediaFormat;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.ChunkOffset64BitBox;
+import com.coremedia.iso.boxes.ChunkOffsetBox;
+import com.coremedia.iso.boxes.SampleTableBox;
+import com.coremedia.iso.boxes.StaticChunkOffsetBox;
+import com.coremedia.iso.boxes.TrackBox;
+import com.googlecode.mp4parser.authoring.Mp4TrackImpl;
+import com.googlecode.mp4parser.authoring.Sample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class MP4BuilderTest {
+
+    private File file;
+    private File fastStartFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        file = File.createTempFile("builder", ".mp4");
+        fastStartFile = File.createTempFile("faststart", ".mp4");
+    }
+
+    @After
+    public void deleteFiles() {
+        file.delete();
+        fastStartFile.delete();
+    }
+
+    private static Track createTrack(long... chunkOffsets) throws Exception {
+        MediaFormat format = MediaFormat.createAudioFormat("audio/mp4a-latm", 44100, 2);
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[]{0x12, 0x10}));
+        Track track = new Track(0, format, true);
+        for (int a = 0; a < chunkOffsets.length; a++) {
+            // two samples per chunk, with a gap to the next chunk
+            track.addSample(chunkOffsets[a], 100, a * 2048, 0, true);
+            track.addSample(chunkOffsets[a] + 100, 100, a * 2048 + 1024, 0, true);
+        }
+        return track;
+    }
+
+    private static ChunkOffsetBox createStco(Track track) {
+        SampleTableBox stbl = new SampleTableBox();
+        new MP4Builder().createStco(track, stbl);
+        return (ChunkOffsetBox) stbl.getBoxes().get(0);
+    }
+
+    @Test
+    public void offsetsBelow4GB_useStco() throws Exception {
+        long[] offsets = {40, 100000, 0xffffff00L};
+        ChunkOffsetBox stco = createStco(createTrack(offsets));
+        assertTrue(stco instanceof StaticChunkOffsetBox);
+        assertArrayEquals(offsets, stco.getChunkOffsets());
+    }
+
+    @Test
+    public void offsetsPast4GB_useCo64() throws Exception {
+        long[] offsets = {40, 0xffffff00L, 0x100000000L, 0x2345678901L};
+        ChunkOffsetBox stco = createStco(createTrack(offsets));
+        assertTrue(stco instanceof ChunkOffset64BitBox);
+        assertArrayEquals(offsets, stco.getChunkOffsets());
+    }
+
+    private static void writeMovie(File file, boolean fastStart) throws Exception {
+        Mp4Movie movie = new Mp4Movie();
+        movie.setCacheFile(file);
+        movie.setFastStart(fastStart);
+        TestMovies.write(movie, 3);
+    }
+
+    private static long[] getChunkOffsets(IsoFile isoFile, int track) {
+        TrackBox trackBox = isoFile.getMovieBox().getBoxes(TrackBox.class).get(track);
+        return trackBox.getSampleTableBox().getChunkOffsetBox().getChunkOffsets();
+    }
+
+    @Test
+    public void fastStart_movesMoovInFrontOfTheSamples() throws Exception {
+        writeMovie(file, false);
+        writeMovie(fastStartFile, true);
+        assertFalse(new File(fastStartFile.getPath() + ".faststart").exists());
+        assertEquals(file.length(), fastStartFile.length());
+
+        IsoFile regular = new IsoFile(file.getPath());
+        IsoFile fastStart = new IsoFile(fastStartFile.getPath());
+        try {
+            // the samples go into a new mdat box every 32 KB
+            List<Box> boxes = fastStart.getBoxes();
+            assertEquals(regular.getBoxes().size(), boxes.size());
+            assertEquals("ftyp", boxes.get(0).getType());
+            assertEquals("moov", boxes.get(1).getType());
+            for (int a = 2; a < boxes.size(); a++) {
+                assertEquals("mdat", boxes.get(a).getType());
+            }
+            assertEquals("moov", regular.getBoxes().get(boxes.size() - 1).getType());
+
+            long moovSize = fastStart.getMovieBox().getSize();
+            for (int track = 0; track < 2; track++) {
+                long[] offsets = getChunkOffsets(regular, track);
+                long[] shiftedOffsets = getChunkOffsets(fastStart, track);
+                assertEquals(offsets.length, shiftedOffsets.length);
+                for (int a = 0; a < offsets.length; a++) {
+                    assertEquals(offsets[a] + moovSize, shiftedOffsets[a]);
+                }
+
+                TrackBox trackBox = fastStart.getMovieBox().getBoxes(TrackBox.class).get(track);
+                boolean audio = "soun".equals(trackBox.getMediaBox().getHandlerBox().getHandlerType());
+                List<Sample> samples = new Mp4TrackImpl("faststart", trackBox).getSamples();
+                assertEquals(audio ? 3 * TestMovies.SAMPLE_RATE / 1024 : 3 * TestMovies.FPS, samples.size());
+                for (int a = 0; a < samples.size(); a++) {
+                    ByteBuffer sample = samples.get(a).asByteBuffer();
+                    byte[] data = new byte[sample.remaining()];
+                    sample.get(data);
+                    assertArrayEquals(TestMovies.getPayload(audio, a), data);
+                }
+            }
+        } finally {
+            regular.close();
+            fastStart.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.veeradeveloper.videocutter;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class Mp4CheckpointTest {
+
+    private File file;
+    private MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("movie", ".checkpoint");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    private static Track createTrack() throws Exception {
+        MediaFormat format = MediaFormat.createAudioFormat("audio/mp4a-latm", 44100, 2);
+        format.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[]{0x12, 0x10}));
+        return new Track(0, format, true);
+    }
+
+    private void addSamples(Mp4Checkpoint checkpoint, int first, int count) throws Exception {
+        for (int a = first; a < first + count; a++) {
+            info.set(0, 100 + a, a * 23219L, 0);
+            checkpoint.addSample(0, 1000 + a * 1000L, info);
+        }
+    }
+
+    // Two committed batches of 10 samples, with the output complete at 20000 and 30000 bytes.
+    private void writeTwoBatches() throws Exception {
+        Mp4Checkpoint checkpoint = new Mp4Checkpoint(file, null, 10000);
+        checkpoint.addTrack(createTrack());
+        addSamples(checkpoint, 0, 10);
+        assertTrue(checkpoint.needsCommit(20000));
+        checkpoint.commit(20000);
+        assertFalse(checkpoint.needsCommit(25000));
+        addSamples(checkpoint, 10, 10);
+        checkpoint.commit(30000);
+        checkpoint.close();
+    }
+
+    private static void checkState(Mp4Checkpoint.State state, int samplesCount, long dataOffset) {
+        assertNotNull(state);
+        assertEquals(dataOffset, state.dataOffset);
+        assertEquals(1, state.tracks.size());
+        Mp4Checkpoint.TrackState track = state.tracks.get(0);
+        assertTrue(track.trackInfo.isAudio);
+        assertEquals(44100, track.trackInfo.timeScale);
+        assertEquals(samplesCount, track.samplesCount);
+        for (int a = 0; a < samplesCount; a++) {
+            assertEquals(1000 + a * 1000L, track.offsets[a]);
+            assertEquals(100 + a, track.sizes[a]);
+            assertEquals(a * 23219L, track.presentationTimes[a]);
+        }
+    }
+
+    @Test
+    public void read_returnsEveryCommittedBatch() throws Exception {
+        writeTwoBatches();
+        checkState(Mp4Checkpoint.read(file), 20, 30000);
+    }
+
+    @Test
+    public void read_ignoresATornBatch() throws Exception {
+        writeTwoBatches();
+        RandomAccessFile journal = new RandomAccessFile(file, "rw");
+        journal.setLength(journal.length() - 5);
+        journal.close();
+        checkState(Mp4Checkpoint.read(file), 10, 20000);
+    }
+
+    @Test
+    public void read_ignoresACorruptBatch() throws Exception {
+        writeTwoBatches();
+        RandomAccessFile journal = new RandomAccessFile(file, "rw");
+        journal.seek(journal.length() - 20);
+        int value = journal.read();
+        journal.seek(journal.length() - 20);
+        journal.write(value ^ 0xff);
+        journal.close();
+        checkState(Mp4Checkpoint.read(file), 10, 20000);
+    }
+
+    @Test
+    public void read_withoutCommit_returnsNull() throws Exception {
+        Mp4Checkpoint checkpoint = new Mp4Checkpoint(file, null, 10000);
+        checkpoint.addTrack(createTrack());
+        addSamples(checkpoint, 0, 10);
+        checkpoint.close();
+        assertNull(Mp4Checkpoint.read(file));
+        file.delete();
+        assertNull(Mp4Checkpoint.read(file));
+    }
+
+    @Test
+    public void resumedJournal_continuesAfterTheLastValidBatch() throws Exception {
+        writeTwoBatches();
+        RandomAccessFile journal = new RandomAccessFile(file, "rw");
+        journal.setLength(journal.length() - 5);
+        journal.close();
+
+        Mp4Checkpoint checkpoint = new Mp4Checkpoint(file, Mp4Checkpoint.read(file), 10000);
+        addSamples(checkpoint, 10, 10);
+        checkpoint.commit(30000);
+        checkpoint.close();
+        checkState(Mp4Checkpoint.read(file), 20, 30000);
+    }
+}
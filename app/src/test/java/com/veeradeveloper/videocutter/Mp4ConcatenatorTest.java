@@ -0,0 +1,141 @@
+package com.veeradeveloper.videocutter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class Mp4ConcatenatorTest {
+
+    private File firstFile;
+    private File secondFile;
+    private File outputFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        firstFile = File.createTempFile("first", ".mp4");
+        secondFile = File.createTempFile("second", ".mp4");
+        outputFile = File.createTempFile("joined", ".mp4");
+    }
+
+    @After
+    public void deleteFiles() {
+        firstFile.delete();
+        secondFile.delete();
+        outputFile.delete();
+    }
+
+    private long concat() throws Exception {
+        ArrayList<File> inputs = new ArrayList<>();
+        inputs.add(firstFile);
+        inputs.add(secondFile);
+        return Mp4Concatenator.concat(inputs, outputFile);
+    }
+
+    // When the clip ends on screen: the end of its longer track, last sample duration included.
+    private static long getEndUs(File file) throws Exception {
+        Mp4Demuxer demuxer = new Mp4Demuxer(file);
+        try {
+            long endUs = 0;
+            for (int a = 0; a < 2; a++) {
+                Mp4Demuxer.TrackInfo trackInfo = demuxer.getTrack(a == 1);
+                int last = trackInfo.samplesCount - 1;
+                endUs = Math.max(endUs, trackInfo.getPresentationTimeUs(last) + trackInfo.getSampleDuration(last) * 1000000L / trackInfo.timeScale);
+            }
+            return endUs;
+        } finally {
+            demuxer.close();
+        }
+    }
+
+    // Samples first..first + count - 1 of the output have to be the clip's samples from index 0, playing at their
+    // source time plus clipStartUs.
+    private void checkClip(Mp4Demuxer output, boolean audio, int first, int count, long clipStartUs, long toleranceUs) throws Exception {
+        Mp4Demuxer.TrackInfo trackInfo = output.getTrack(audio);
+        for (int a = 0; a < count; a++) {
+            assertArrayEquals(TestMovies.getPayload(audio, a), TestMovies.readSample(output, trackInfo, first + a));
+            long sourceTime = audio ? TestMovies.getAudioTimeUs(a) : TestMovies.getVideoTimeUs(a);
+            assertEquals(clipStartUs + sourceTime, trackInfo.getPresentationTimeUs(first + a), toleranceUs);
+        }
+    }
+
+    @Test
+    public void clips_followEachOther() throws Exception {
+        TestMovies.write(firstFile, 1, 0);
+        TestMovies.write(secondFile, 2, 0);
+        long duration = concat();
+        long secondStartUs = getEndUs(firstFile);
+        assertEquals(secondStartUs + getEndUs(secondFile), duration);
+
+        int firstAudio = TestMovies.SAMPLE_RATE / 1024;
+        int secondAudio = 2 * TestMovies.SAMPLE_RATE / 1024;
+        long audioTolerance = 1000000 / TestMovies.SAMPLE_RATE + 1;
+        Mp4Demuxer output = new Mp4Demuxer(outputFile);
+        try {
+            assertEquals(3 * TestMovies.FPS, output.getTrack(false).samplesCount);
+            assertEquals(firstAudio + secondAudio, output.getTrack(true).samplesCount);
+            assertTrue(output.getTrack(false).isSync(TestMovies.FPS));
+            checkClip(output, false, 0, TestMovies.FPS, 0, 1);
+            checkClip(output, false, TestMovies.FPS, 2 * TestMovies.FPS, secondStartUs, 1);
+            checkClip(output, true, 0, firstAudio, 0, audioTolerance);
+            checkClip(output, true, firstAudio, secondAudio, secondStartUs, audioTolerance);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void firstClipEdit_isKept() throws Exception {
+        TestMovies.write(firstFile, 1, 1024);
+        TestMovies.write(secondFile, 1, 1024);
+        concat();
+        long secondStartUs = getEndUs(firstFile);
+
+        int clipAudio = TestMovies.SAMPLE_RATE / 1024;
+        long audioTolerance = 1000000 / TestMovies.SAMPLE_RATE + 1;
+        // both sources play their audio one frame early, so both clips in the output have to as well
+        long primingUs = TestMovies.getAudioTimeUs(1);
+        Mp4Demuxer output = new Mp4Demuxer(outputFile);
+        try {
+            assertEquals(1024, output.getTrack(true).editMediaTime);
+            checkClip(output, false, TestMovies.FPS, TestMovies.FPS, secondStartUs, 1);
+            checkClip(output, true, 0, clipAudio, -primingUs, audioTolerance);
+            checkClip(output, true, clipAudio, clipAudio, secondStartUs - primingUs, audioTolerance);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void failedCopy_deletesTheOutput() throws Exception {
+        TestMovies.write(firstFile, 1, 0);
+        // moov in front, so the clip opens but its samples are cut off
+        Mp4Movie movie = new Mp4Movie();
+        movie.setCacheFile(secondFile);
+        movie.setFastStart(true);
+        TestMovies.write(movie, 2);
+        RandomAccessFile file = new RandomAccessFile(secondFile, "rw");
+        try {
+            file.setLength(file.length() - 20000);
+        } finally {
+            file.close();
+        }
+
+        try {
+            concat();
+            fail("a truncated clip has to fail the copy");
+        } catch (Exception e) {
+            assertFalse(outputFile.exists());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.veeradeveloper.videocutter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class Mp4DemuxerTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("demuxer", ".mp4");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void readsWhatMp4BuilderWrote() throws Exception {
+        TestMovies.write(file, 2, 0);
+        Mp4Demuxer demuxer = new Mp4Demuxer(file);
+        try {
+            assertEquals(2, demuxer.getTracks().size());
+            Mp4Demuxer.TrackInfo video = demuxer.getTrack(false);
+            Mp4Demuxer.TrackInfo audio = demuxer.getTrack(true);
+            assertEquals("vide", video.handler);
+            assertEquals("soun", audio.handler);
+            assertEquals(2 * TestMovies.FPS, video.samplesCount);
+            assertEquals(2 * TestMovies.SAMPLE_RATE / 1024, audio.samplesCount);
+            assertEquals(320, video.width);
+            assertEquals(TestMovies.SAMPLE_RATE, audio.timeScale);
+
+            for (int a = 0; a < video.samplesCount; a++) {
+                assertEquals(TestMovies.getVideoTimeUs(a), video.getPresentationTimeUs(a));
+                assertEquals(a % TestMovies.GOP == 0, video.isSync(a));
+                assertArrayEquals(TestMovies.getPayload(false, a), TestMovies.readSample(demuxer, video, a));
+            }
+            for (int a = 0; a < audio.samplesCount; a++) {
+                assertEquals(TestMovies.getAudioTimeUs(a), audio.getPresentationTimeUs(a));
+                assertTrue(audio.isSync(a));
+                assertArrayEquals(TestMovies.getPayload(true, a), TestMovies.readSample(demuxer, audio, a));
+            }
+        } finally {
+            demuxer.close();
+        }
+    }
+
+    @Test
+    public void findsSyncSampleBefore() throws Exception {
+        TestMovies.write(file, 2, 0);
+        Mp4Demuxer demuxer = new Mp4Demuxer(file);
+        try {
+            Mp4Demuxer.TrackInfo video = demuxer.getTrack(false);
+            assertEquals(0, video.findSyncSampleBefore(0));
+            assertEquals(10, video.findSyncSampleBefore(TestMovies.getVideoTimeUs(19)));
+            assertEquals(20, video.findSyncSampleBefore(TestMovies.getVideoTimeUs(20)));
+            assertEquals(50, video.findSyncSampleBefore(Long.MAX_VALUE));
+        } finally {
+            demuxer.close();
+        }
+    }
+
+    @Test
+    public void editList_shiftsThePresentationTimes() throws Exception {
+        TestMovies.write(file, 1, 1024);
+        Mp4Demuxer demuxer = new Mp4Demuxer(file);
+        try {
+            Mp4Demuxer.TrackInfo audio = demuxer.getTrack(true);
+            assertEquals(1024, audio.editMediaTime);
+            assertEquals(0, audio.editStartUs);
+            assertEquals(-TestMovies.getAudioTimeUs(1), audio.getPresentationTimeUs(0));
+            assertEquals(0, audio.getPresentationTimeUs(1));
+            assertEquals(1024, audio.getMediaTime(0));
+            assertEquals(0, demuxer.getTrack(false).editMediaTime);
+        } finally {
+            demuxer.close();
+        }
+    }
+}
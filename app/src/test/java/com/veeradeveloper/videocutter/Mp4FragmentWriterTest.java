@@ -0,0 +1,106 @@
+package com.veeradeveloper.videocutter;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.TrackBox;
+import com.coremedia.iso.boxes.fragment.MovieFragmentBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentBaseMediaDecodeTimeBox;
+import com.coremedia.iso.boxes.fragment.TrackFragmentBox;
+import com.coremedia.iso.boxes.fragment.TrackRunBox;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class Mp4FragmentWriterTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("fragmented", ".mp4");
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void fragments_pointAtTheirSamples() throws Exception {
+        Mp4Movie movie = new Mp4Movie();
+        movie.setCacheFile(file);
+        movie.setFragmented(1000, 0);
+        TestMovies.write(movie, 3);
+
+        IsoFile isoFile = new IsoFile(file.getPath());
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            HashMap<Long, Boolean> audioTracks = new HashMap<>();
+            HashMap<Long, Long> timeScales = new HashMap<>();
+            for (TrackBox trackBox : isoFile.getMovieBox().getBoxes(TrackBox.class)) {
+                long trackId = trackBox.getTrackHeaderBox().getTrackId();
+                audioTracks.put(trackId, "soun".equals(trackBox.getMediaBox().getHandlerBox().getHandlerType()));
+                timeScales.put(trackId, trackBox.getMediaBox().getMediaHeaderBox().getTimescale());
+                // the sample tables stay empty, every sample is in a fragment
+                assertEquals(0, trackBox.getSampleTableBox().getSampleSizeBox().getSampleCount());
+            }
+            assertEquals(2, audioTracks.size());
+
+            List<Box> boxes = isoFile.getBoxes();
+            assertEquals("ftyp", boxes.get(0).getType());
+            assertEquals("moov", boxes.get(1).getType());
+            int[] samples = new int[2];
+            int fragments = 0;
+            long boxOffset = boxes.get(0).getSize() + boxes.get(1).getSize();
+            for (int a = 2; a < boxes.size(); a += 2) {
+                assertEquals("moof", boxes.get(a).getType());
+                assertEquals("mdat", boxes.get(a + 1).getType());
+                MovieFragmentBox moof = (MovieFragmentBox) boxes.get(a);
+                fragments++;
+                for (TrackFragmentBox traf : moof.getBoxes(TrackFragmentBox.class)) {
+                    long trackId = traf.getTrackFragmentHeaderBox().getTrackId();
+                    boolean audio = audioTracks.get(trackId);
+                    long timeScale = timeScales.get(trackId);
+                    int index = samples[audio ? 1 : 0];
+
+                    long firstTimeUs = audio ? TestMovies.getAudioTimeUs(index) : TestMovies.getVideoTimeUs(index);
+                    TrackFragmentBaseMediaDecodeTimeBox tfdt = traf.getBoxes(TrackFragmentBaseMediaDecodeTimeBox.class).get(0);
+                    assertEquals((firstTimeUs * timeScale + 500000) / 1000000, tfdt.getBaseMediaDecodeTime());
+
+                    TrackRunBox trun = traf.getBoxes(TrackRunBox.class).get(0);
+                    long position = boxOffset + trun.getDataOffset();
+                    for (TrackRunBox.Entry entry : trun.getEntries()) {
+                        byte[] data = new byte[(int) entry.getSampleSize()];
+                        input.seek(position);
+                        input.readFully(data);
+                        assertArrayEquals(TestMovies.getPayload(audio, index), data);
+                        position += data.length;
+                        index++;
+                    }
+                    samples[audio ? 1 : 0] = index;
+                }
+                boxOffset += moof.getSize() + boxes.get(a + 1).getSize();
+            }
+            assertEquals(file.length(), boxOffset);
+            assertEquals(3 * TestMovies.FPS, samples[0]);
+            assertEquals(3 * TestMovies.SAMPLE_RATE / 1024, samples[1]);
+            assertTrue(fragments >= 3);
+        } finally {
+            input.close();
+            isoFile.close();
+        }
+    }
+}
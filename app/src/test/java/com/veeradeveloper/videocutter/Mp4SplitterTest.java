@@ -0,0 +1,115 @@
+package com.veeradeveloper.videocutter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class Mp4SplitterTest {
+
+    private File sourceFile;
+    private Mp4Movie[] movies;
+
+    @Before
+    public void createFiles() throws Exception {
+        sourceFile = File.createTempFile("source", ".mp4");
+    }
+
+    @After
+    public void deleteFiles() {
+        sourceFile.delete();
+        if (movies != null) {
+            for (int a = 0; a < movies.length; a++) {
+                movies[a].getCacheFile().delete();
+            }
+        }
+    }
+
+    private long[] split(long... splitTimesUs) throws Exception {
+        movies = new Mp4Movie[splitTimesUs.length + 1];
+        for (int a = 0; a < movies.length; a++) {
+            movies[a] = new Mp4Movie();
+            movies[a].setCacheFile(new File(sourceFile.getPath() + "_" + a));
+            movies[a].setSize(320, 240);
+        }
+        Mp4Demuxer demuxer = new Mp4Demuxer(sourceFile);
+        try {
+            return new Mp4Splitter(demuxer).split(splitTimesUs, movies);
+        } finally {
+            demuxer.close();
+        }
+    }
+
+    // Every sample of a part has to play at its source time minus the part start; returns the source index of the first one.
+    private int checkTimes(Mp4Demuxer output, Mp4Demuxer.TrackInfo trackInfo, boolean audio, long shiftUs, long toleranceUs) throws Exception {
+        int sourceCount = audio ? 3 * TestMovies.SAMPLE_RATE / 1024 : 3 * TestMovies.FPS;
+        int first = -1;
+        for (int a = 0; a < trackInfo.samplesCount; a++) {
+            int index = TestMovies.findSample(audio, TestMovies.readSample(output, trackInfo, a), sourceCount);
+            assertTrue(index >= 0);
+            if (first == -1) {
+                first = index;
+            }
+            assertEquals(first + a, index);
+            long sourceTime = audio ? TestMovies.getAudioTimeUs(index) : TestMovies.getVideoTimeUs(index);
+            assertEquals(sourceTime - shiftUs, trackInfo.getPresentationTimeUs(a), toleranceUs);
+        }
+        return first;
+    }
+
+    private void checkParts(long[] partStartTimes, int[] videoCounts, long audioShiftUs) throws Exception {
+        int videoNext = 0;
+        int audioNext = 0;
+        for (int a = 0; a < movies.length; a++) {
+            assertEquals(TestMovies.getVideoTimeUs(videoNext), partStartTimes[a]);
+            Mp4Demuxer output = new Mp4Demuxer(movies[a].getCacheFile());
+            try {
+                Mp4Demuxer.TrackInfo video = output.getTrack(false);
+                Mp4Demuxer.TrackInfo audio = output.getTrack(true);
+                assertEquals(videoCounts[a], video.samplesCount);
+                assertTrue(video.isSync(0));
+                assertEquals(0, video.getPresentationTimeUs(0));
+                assertEquals(videoNext, checkTimes(output, video, false, partStartTimes[a], 1));
+                assertEquals(audioNext, checkTimes(output, audio, true, partStartTimes[a] + audioShiftUs, 1000000 / TestMovies.SAMPLE_RATE + 1));
+                videoNext += video.samplesCount;
+                audioNext += audio.samplesCount;
+            } finally {
+                output.close();
+            }
+        }
+        assertEquals(3 * TestMovies.FPS, videoNext);
+        assertEquals(3 * TestMovies.SAMPLE_RATE / 1024, audioNext);
+    }
+
+    @Test
+    public void parts_startAtSyncSamplesAndPlayFromZero() throws Exception {
+        TestMovies.write(sourceFile, 3, 0);
+        long[] partStartTimes = split(1100000, 2000000);
+        checkParts(partStartTimes, new int[]{30, 30, 30}, 0);
+    }
+
+    @Test
+    public void parts_keepAudioPrimingInSync() throws Exception {
+        TestMovies.write(sourceFile, 3, 1024);
+        long[] partStartTimes = split(1500000);
+        // the source audio is one frame early, so every part has to be as well
+        checkParts(partStartTimes, new int[]{40, 50}, TestMovies.getAudioTimeUs(1));
+    }
+
+    @Test
+    public void splitInsideTheFirstGop_leavesNoPart() throws Exception {
+        TestMovies.write(sourceFile, 3, 0);
+        long[] partStartTimes = split(1000000, 1200000);
+        assertEquals(-1, partStartTimes[1]);
+        assertFalse(movies[1].getCacheFile().exists());
+        assertEquals(TestMovies.getVideoTimeUs(30), partStartTimes[2]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.veeradeveloper.videocutter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 25)
+public class Mp4TrimCopierTest {
+
+    private File sourceFile;
+    private File outputFile;
+
+    @Before
+    public void createFiles() throws Exception {
+        sourceFile = File.createTempFile("source", ".mp4");
+        outputFile = File.createTempFile("trimmed", ".mp4");
+    }
+
+    @After
+    public void deleteFiles() {
+        sourceFile.delete();
+        outputFile.delete();
+    }
+
+    private long trim(CutList cutList) throws Exception {
+        Mp4Demuxer demuxer = new Mp4Demuxer(sourceFile);
+        try {
+            Mp4Movie movie = new Mp4Movie();
+            movie.setCacheFile(outputFile);
+            movie.setSize(320, 240);
+            MP4Builder builder = new MP4Builder().createMovie(movie);
+            long videoStartUs = new Mp4TrimCopier(demuxer, builder).copy(cutList);
+            builder.finishMovie(false);
+            return videoStartUs;
+        } finally {
+            demuxer.close();
+        }
+    }
+
+    // Every copied sample has to play at its source time minus the trim start.
+    private void checkTimes(Mp4Demuxer output, Mp4Demuxer.TrackInfo trackInfo, boolean audio, long shiftUs, long toleranceUs) throws Exception {
+        int sourceCount = audio ? 3 * TestMovies.SAMPLE_RATE / 1024 : 3 * TestMovies.FPS;
+        for (int a = 0; a < trackInfo.samplesCount; a++) {
+            int index = TestMovies.findSample(audio, TestMovies.readSample(output, trackInfo, a), sourceCount);
+            assertTrue(index >= 0);
+            long sourceTime = audio ? TestMovies.getAudioTimeUs(index) : TestMovies.getVideoTimeUs(index);
+            assertEquals(sourceTime - shiftUs, trackInfo.getPresentationTimeUs(a), toleranceUs);
+        }
+    }
+
+    @Test
+    public void trim_startsAtThePreviousSyncSample() throws Exception {
+        TestMovies.write(sourceFile, 3, 0);
+        long videoStartUs = trim(new CutList(1100000, 2000000));
+        assertEquals(TestMovies.getVideoTimeUs(30), videoStartUs);
+
+        Mp4Demuxer output = new Mp4Demuxer(outputFile);
+        try {
+            Mp4Demuxer.TrackInfo video = output.getTrack(false);
+            Mp4Demuxer.TrackInfo audio = output.getTrack(true);
+            assertEquals(30, video.samplesCount);
+            assertArrayEquals(TestMovies.getPayload(false, 30), TestMovies.readSample(output, video, 0));
+            assertArrayEquals(TestMovies.getPayload(false, 59), TestMovies.readSample(output, video, 29));
+            assertTrue(video.isSync(0));
+            assertEquals(0, video.getPresentationTimeUs(0));
+            checkTimes(output, video, false, videoStartUs, 1);
+            checkTimes(output, audio, true, videoStartUs, 1000000 / TestMovies.SAMPLE_RATE + 1);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void trim_keepsAudioPrimingInSync() throws Exception {
+        TestMovies.write(sourceFile, 3, 1024);
+        long videoStartUs = trim(new CutList(1000000, 2000000));
+
+        Mp4Demuxer output = new Mp4Demuxer(outputFile);
+        try {
+            Mp4Demuxer.TrackInfo audio = output.getTrack(true);
+            assertTrue(audio.editMediaTime != 0 || audio.editStartUs != 0);
+            // the source audio is one frame early, so the copy has to be as well
+            long shiftUs = videoStartUs + TestMovies.getAudioTimeUs(1);
+            checkTimes(output, audio, true, shiftUs, 1000000 / TestMovies.SAMPLE_RATE + 1);
+            checkTimes(output, output.getTrack(false), false, videoStartUs, 1);
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test
+    public void segments_followEachOther() throws Exception {
+        TestMovies.write(sourceFile, 3, 0);
+        CutList cutList = new CutList(0, 1000000);
+        cutList.addSegment(2000000, 3000000);
+        trim(cutList);
+
+        Mp4Demuxer output = new Mp4Demuxer(outputFile);
+        try {
+            Mp4Demuxer.TrackInfo video = output.getTrack(false);
+            assertEquals(60, video.samplesCount);
+            assertArrayEquals(TestMovies.getPayload(false, 60), TestMovies.readSample(output, video, 30));
+            assertEquals(TestMovies.getVideoTimeUs(30), video.getPresentationTimeUs(30), 1);
+            assertTrue(video.isSync(30));
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.veeradeveloper.videocutter;
+
+import com.coremedia.iso.boxes.TimeToSampleBox;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SampleDurationsTest {
+
+    @Test
+    public void deltas_becomeTheDurationOfThePreviousSample() throws Exception {
+        SampleDurations durations = new SampleDurations(1024);
+        // the delta of the first sample has no previous sample and is dropped
+        durations.addSample(5000);
+        durations.addSample(1024);
+        durations.addSample(1024);
+        durations.addSample(2048);
+        List<TimeToSampleBox.Entry> entries = durations.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals(2, entries.get(0).getCount());
+        assertEquals(1024, entries.get(0).getDelta());
+        assertEquals(1, entries.get(1).getCount());
+        assertEquals(2048, entries.get(1).getDelta());
+        assertEquals(1, entries.get(2).getCount());
+        assertEquals(1024, entries.get(2).getDelta());
+    }
+
+    @Test
+    public void lastSample_joinsAMatchingRun() throws Exception {
+        SampleDurations durations = new SampleDurations(3000);
+        for (int a = 0; a < 100; a++) {
+            durations.addSample(3000);
+        }
+        List<TimeToSampleBox.Entry> entries = durations.getEntries();
+        assertEquals(1, entries.size());
+        assertEquals(100, entries.get(0).getCount());
+        assertEquals(3000, entries.get(0).getDelta());
+    }
+
+    @Test
+    public void noSamples_noEntries() throws Exception {
+        assertTrue(new SampleDurations(3000).getEntries().isEmpty());
+    }
+}
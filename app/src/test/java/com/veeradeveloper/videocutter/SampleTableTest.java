@@ -0,0 +1,90 @@
+package com.veeradeveloper.videocutter;
+
+import com.coremedia.iso.boxes.SampleToChunkBox;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SampleTableTest {
+
+    @Test
+    public void samples_keepTheirSizes() throws Exception {
+        SampleTable table = new SampleTable(false);
+        for (int a = 0; a < 5000; a++) {
+            table.addSample(a * 100, 10 + a % 90, false);
+        }
+        assertEquals(5000, table.size());
+        long[] sizes = table.getSizes();
+        assertEquals(5000, sizes.length);
+        for (int a = 0; a < 5000; a++) {
+            assertEquals(10 + a % 90, sizes[a]);
+        }
+    }
+
+    @Test
+    public void syncSamples_areOneBased() throws Exception {
+        SampleTable table = new SampleTable(true);
+        for (int a = 0; a < 2000; a++) {
+            table.addSample(a * 10, 10, a % 30 == 0);
+        }
+        assertEquals(67, table.getSyncSampleCount());
+        long[] syncSamples = table.getSyncSamples();
+        assertEquals(67, syncSamples.length);
+        assertEquals(1, syncSamples[0]);
+        assertEquals(31, syncSamples[1]);
+        assertEquals(1981, syncSamples[66]);
+    }
+
+    @Test
+    public void withoutSyncTable_noSyncSamplesAreKept() throws Exception {
+        SampleTable table = new SampleTable(false);
+        table.addSample(0, 10, true);
+        assertEquals(0, table.getSyncSampleCount());
+    }
+
+    @Test
+    public void contiguousSamples_shareAChunk() throws Exception {
+        SampleTable table = new SampleTable(false);
+        table.addSample(100, 10, false);
+        table.addSample(110, 20, false);
+        table.addSample(200, 5, false);
+        table.addSample(205, 5, false);
+        table.addSample(300, 1, false);
+        assertEquals(5, table.size());
+        assertArrayEquals(new long[]{10, 20, 5, 5, 1}, table.getSizes());
+        assertArrayEquals(new long[]{100, 200, 300}, table.getChunkOffsets());
+
+        List<SampleToChunkBox.Entry> entries = table.getSampleToChunkEntries();
+        assertEquals(2, entries.size());
+        assertEquals(1, entries.get(0).getFirstChunk());
+        assertEquals(2, entries.get(0).getSamplesPerChunk());
+        assertEquals(3, entries.get(1).getFirstChunk());
+        assertEquals(1, entries.get(1).getSamplesPerChunk());
+    }
+
+    @Test
+    public void chunks_growPastTheInitialTables() throws Exception {
+        SampleTable table = new SampleTable(false);
+        // chunks of 1, 2 and 3 samples in turn, each after a gap, so every chunk opens a new stsc run
+        long offset = 0;
+        int chunks = 1000;
+        for (int a = 0; a < chunks; a++) {
+            offset += 1000;
+            for (int b = 0; b <= a % 3; b++) {
+                table.addSample(offset, 10, false);
+                offset += 10;
+            }
+        }
+        long[] chunkOffsets = table.getChunkOffsets();
+        assertEquals(chunks, chunkOffsets.length);
+        assertEquals(1000, chunkOffsets[0]);
+        assertEquals(2010, chunkOffsets[1]);
+        List<SampleToChunkBox.Entry> entries = table.getSampleToChunkEntries();
+        assertEquals(chunks, entries.size());
+        assertEquals(chunks, entries.get(chunks - 1).getFirstChunk());
+        assertEquals((chunks - 1) % 3 + 1, entries.get(chunks - 1).getSamplesPerChunk());
+    }
+}
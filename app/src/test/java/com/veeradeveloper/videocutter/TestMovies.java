@@ -0,0 +1,110 @@
+package com.veeradeveloper.videocutter;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+// Small movies written through MP4Builder: 30 fps video with a key frame every GOP frames and 1024 sample AAC frames
+// at 44.1 kHz, interleaved by time. Every payload is made from its track and index, so copies can be traced back.
+class TestMovies {
+
+    static final int FPS = 30;
+    static final int GOP = 10;
+    static final int SAMPLE_RATE = 44100;
+
+    static long getVideoTimeUs(int index) {
+        return index * 1000000L / FPS;
+    }
+
+    static long getAudioTimeUs(int index) {
+        return index * 1024L * 1000000 / SAMPLE_RATE;
+    }
+
+    static int getSize(boolean audio, int index) {
+        return audio ? 200 + index % 50 : 1000 + (index % GOP == 0 ? 4000 : index % 300);
+    }
+
+    // The sample as it is stored in the movie: video NAL units carry a 4-byte length instead of the start code.
+    static byte[] getPayload(boolean audio, int index) {
+        int size = getSize(audio, index);
+        byte[] payload = new byte[size];
+        for (int a = 0; a < size; a++) {
+            payload[a] = (byte) ((audio ? 7 : 3) + index * 31 + a);
+            if (payload[a] == 0) {
+                payload[a] = 1;
+            }
+        }
+        if (!audio) {
+            ByteBuffer.wrap(payload).putInt(size - 4);
+            payload[4] = (byte) (index % GOP == 0 ? 0x65 : 0x41);
+        }
+        return payload;
+    }
+
+    static void write(File file, int seconds, long audioEditMediaTime) throws Exception {
+        Mp4Movie movie = new Mp4Movie();
+        movie.setCacheFile(file);
+        write(movie, seconds, audioEditMediaTime);
+    }
+
+    static void write(Mp4Movie movie, int seconds) throws Exception {
+        write(movie, seconds, 0);
+    }
+
+    // Writes seconds of video and audio into the movie, which only needs its cache file set. A non-zero
+    // audioEditMediaTime starts the audio that many samples into its media, like the priming of an AAC encoder.
+    static void write(Mp4Movie movie, int seconds, long audioEditMediaTime) throws Exception {
+        movie.setSize(320, 240);
+        MP4Builder builder = new MP4Builder().createMovie(movie);
+
+        MediaFormat videoFormat = MediaFormat.createVideoFormat("video/avc", 320, 240);
+        videoFormat.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 0x67, 0x42, (byte) 0xc0, 0x1f, (byte) 0xda, 0x01}));
+        videoFormat.setByteBuffer("csd-1", ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 0x68, (byte) 0xce, 0x3c, (byte) 0x80}));
+        int videoTrack = builder.addTrack(videoFormat, false);
+        MediaFormat audioFormat = MediaFormat.createAudioFormat("audio/mp4a-latm", SAMPLE_RATE, 2);
+        audioFormat.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[]{0x12, 0x10}));
+        int audioTrack = builder.addTrack(audioFormat, true);
+        if (audioEditMediaTime != 0) {
+            builder.setEditMediaTime(audioTrack, audioEditMediaTime);
+        }
+
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        int videoFrames = seconds * FPS;
+        int audioFrames = (int) (seconds * (long) SAMPLE_RATE / 1024);
+        int video = 0;
+        int audio = 0;
+        while (video < videoFrames || audio < audioFrames) {
+            boolean isAudio = video >= videoFrames || audio < audioFrames && getAudioTimeUs(audio) < getVideoTimeUs(video);
+            int index = isAudio ? audio++ : video++;
+            byte[] payload = getPayload(isAudio, index);
+            if (!isAudio) {
+                ByteBuffer.wrap(payload).putInt(1);
+            }
+            long time = isAudio ? getAudioTimeUs(index) : getVideoTimeUs(index);
+            info.set(0, payload.length, time, !isAudio && index % GOP == 0 ? MediaCodec.BUFFER_FLAG_SYNC_FRAME : 0);
+            builder.writeSampleData(isAudio ? audioTrack : videoTrack, ByteBuffer.wrap(payload), info, isAudio);
+        }
+        builder.finishMovie(false);
+    }
+
+    static byte[] readSample(Mp4Demuxer demuxer, Mp4Demuxer.TrackInfo trackInfo, int index) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        demuxer.transferTo(trackInfo.offsets[index], trackInfo.sizes[index], Channels.newChannel(stream));
+        return stream.toByteArray();
+    }
+
+    // Index of the source sample with the same payload, or -1.
+    static int findSample(boolean audio, byte[] payload, int samplesCount) {
+        for (int a = 0; a < samplesCount; a++) {
+            if (Arrays.equals(getPayload(audio, a), payload)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+}
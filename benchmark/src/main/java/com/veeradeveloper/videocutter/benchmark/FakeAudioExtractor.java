@@ -0,0 +1,82 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import com.veeradeveloper.videocutter.Extractor;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// The audio track of the same source: 1024 sample AAC frames, every one a sync sample, sized for the bitrate.
+public class FakeAudioExtractor implements Extractor {
+
+    public static final int AUDIO_TRACK = 1;
+
+    private int samplesCount;
+    private int[] sizes;
+    private byte[] payload;
+    private int maxSampleSize;
+    private int sample;
+
+    public FakeAudioExtractor(int durationSeconds, int bitrate) {
+        samplesCount = (int) ((long) durationSeconds * SampleStream.AUDIO_SAMPLE_RATE / 1024);
+        sizes = new int[samplesCount];
+        Random random = new Random(3);
+        int frameSize = (int) ((long) bitrate / 8 * 1024 / SampleStream.AUDIO_SAMPLE_RATE);
+        for (int a = 0; a < samplesCount; a++) {
+            sizes[a] = frameSize / 2 + random.nextInt(frameSize);
+            maxSampleSize = Math.max(maxSampleSize, sizes[a]);
+        }
+        payload = SampleStream.createPayload(random, maxSampleSize);
+    }
+
+    public MediaFormat getTrackFormat() {
+        MediaFormat format = SampleStream.createAudioFormat();
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, maxSampleSize);
+        return format;
+    }
+
+    @Override
+    public int getSampleTrackIndex() {
+        return sample < samplesCount ? AUDIO_TRACK : -1;
+    }
+
+    @Override
+    public long getSampleTime() {
+        return sample < samplesCount ? sample * 1024 * 1000000L / SampleStream.AUDIO_SAMPLE_RATE : -1;
+    }
+
+    @Override
+    public int getSampleFlags() {
+        return sample < samplesCount ? MediaExtractor.SAMPLE_FLAG_SYNC : 0;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        if (sample >= samplesCount) {
+            return -1;
+        }
+        int size = sizes[sample];
+        buffer.clear();
+        buffer.position(offset);
+        buffer.put(payload, 0, size);
+        buffer.limit(offset + size);
+        buffer.position(offset);
+        return size;
+    }
+
+    @Override
+    public boolean advance() {
+        if (sample >= samplesCount) {
+            return false;
+        }
+        sample++;
+        return sample < samplesCount;
+    }
+
+    @Override
+    public void seekTo(long timeUs, int mode) {
+        sample = (int) Math.max(0, Math.min(samplesCount - 1, timeUs * SampleStream.AUDIO_SAMPLE_RATE / 1024 / 1000000));
+    }
+}
@@ -0,0 +1,57 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import com.veeradeveloper.videocutter.Codec;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+// In-memory codec: work is done in order on the codec's own thread and reported through the callback from there,
+// like MediaCodec in asynchronous mode. Each frame takes frameTimeNs of that thread, standing in for the hardware.
+public abstract class FakeCodec implements Codec {
+
+    protected Callback callback;
+    private long frameTimeNs;
+    private ExecutorService thread;
+
+    protected FakeCodec(final String name, long codecFrameTimeNs) {
+        frameTimeNs = codecFrameTimeNs;
+        thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread codecThread = new Thread(runnable, name);
+                codecThread.setDaemon(true);
+                return codecThread;
+            }
+        });
+    }
+
+    @Override
+    public void setCallback(Callback codecCallback) {
+        callback = codecCallback;
+    }
+
+    public void release() {
+        thread.shutdownNow();
+    }
+
+    protected void post(final Runnable task) {
+        thread.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    callback.onError(FakeCodec.this, e);
+                }
+            }
+        });
+    }
+
+    protected void processFrame() {
+        if (frameTimeNs > 0) {
+            LockSupport.parkNanos(frameTimeNs);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaCodec;
+
+import java.nio.ByteBuffer;
+
+// Decoder configured with an output surface: every queued sample comes back as an empty output buffer with its
+// presentation time, and releasing it with render set hands the frame to the renderer.
+public class FakeDecoder extends FakeCodec {
+
+    private static final int BUFFERS_COUNT = 4;
+
+    private ByteBuffer[] inputBuffers = new ByteBuffer[BUFFERS_COUNT];
+    private FakeRenderer renderer;
+
+    public FakeDecoder(int maxInputSize, long codecFrameTimeNs) {
+        super("FakeDecoder", codecFrameTimeNs);
+        for (int a = 0; a < BUFFERS_COUNT; a++) {
+            inputBuffers[a] = ByteBuffer.allocateDirect(maxInputSize);
+        }
+    }
+
+    public void setRenderer(FakeRenderer frameRenderer) {
+        renderer = frameRenderer;
+    }
+
+    public void start() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                for (int a = 0; a < BUFFERS_COUNT; a++) {
+                    callback.onInputBufferAvailable(FakeDecoder.this, a);
+                }
+            }
+        });
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        ByteBuffer buffer = inputBuffers[index];
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return null;
+    }
+
+    @Override
+    public void queueInputBuffer(final int index, int offset, final int size, final long presentationTimeUs, final int flags) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+                if ((flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    info.set(0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                } else {
+                    processFrame();
+                    info.set(0, size, presentationTimeUs, 0);
+                }
+                // output buffers hold nothing in surface mode, so they simply reuse the input index
+                callback.onOutputBufferAvailable(FakeDecoder.this, index, info);
+                if ((flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) == 0) {
+                    callback.onInputBufferAvailable(FakeDecoder.this, index);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+        if (render) {
+            renderer.onFrameAvailable();
+        }
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        throw new IllegalStateException("decoder has no input surface");
+    }
+}
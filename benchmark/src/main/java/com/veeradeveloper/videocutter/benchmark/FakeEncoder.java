@@ -0,0 +1,110 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaCodec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Random;
+
+// Encoder with an input surface: reports its output format first, then turns every frame drawn by the renderer into
+// an H.264 access unit sized for the bitrate, with a key frame every two seconds. Output buffers are allocated on
+// demand and reused once released, so a pipeline that holds on to them shows up as growing memory, not a stall.
+public class FakeEncoder extends FakeCodec {
+
+    private int width;
+    private int height;
+    private int gop;
+    private int frameSize;
+    private byte[] payload;
+    private Random random = new Random(1);
+    private ArrayList<ByteBuffer> outputBuffers = new ArrayList<>();
+    private ArrayDeque<Integer> freeBuffers = new ArrayDeque<>();
+    private boolean formatReported;
+    private int framesCount;
+
+    public FakeEncoder(int resultWidth, int resultHeight, int fps, int bitrate, long codecFrameTimeNs) {
+        super("FakeEncoder", codecFrameTimeNs);
+        width = resultWidth;
+        height = resultHeight;
+        gop = fps * 2;
+        frameSize = Math.max(1, bitrate / 8 / fps);
+        payload = SampleStream.createPayload(random, 5 + frameSize * 8);
+    }
+
+    // Called by the renderer for every swapBuffers.
+    public void queueFrame(final long presentationTimeUs) {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                if (!formatReported) {
+                    formatReported = true;
+                    callback.onOutputFormatChanged(FakeEncoder.this, SampleStream.createVideoFormat(width, height));
+                }
+                processFrame();
+                boolean key = framesCount++ % gop == 0;
+                int size = 5 + (key ? frameSize * 8 : frameSize / 2 + random.nextInt(frameSize));
+                int index = obtainBuffer();
+                ByteBuffer buffer = outputBuffers.get(index);
+                buffer.clear();
+                buffer.put(payload, 0, size);
+                buffer.put(4, (byte) (key ? 0x65 : 0x41));
+                buffer.flip();
+                MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+                info.set(0, size, presentationTimeUs, key ? MediaCodec.BUFFER_FLAG_SYNC_FRAME : 0);
+                callback.onOutputBufferAvailable(FakeEncoder.this, index, info);
+            }
+        });
+    }
+
+    @Override
+    public void signalEndOfInputStream() {
+        post(new Runnable() {
+            @Override
+            public void run() {
+                int index = obtainBuffer();
+                outputBuffers.get(index).clear();
+                MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+                info.set(0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                callback.onOutputBufferAvailable(FakeEncoder.this, index, info);
+            }
+        });
+    }
+
+    private int obtainBuffer() {
+        synchronized (freeBuffers) {
+            if (!freeBuffers.isEmpty()) {
+                return freeBuffers.poll();
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(payload.length);
+        synchronized (freeBuffers) {
+            outputBuffers.add(buffer);
+            return outputBuffers.size() - 1;
+        }
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return null;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        synchronized (freeBuffers) {
+            return outputBuffers.get(index);
+        }
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        throw new IllegalStateException("encoder input is a surface");
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index, boolean render) {
+        synchronized (freeBuffers) {
+            freeBuffers.add(index);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaExtractor;
+
+import com.veeradeveloper.videocutter.Extractor;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Source with a single H.264 track: fps frames per second with a key frame every second, sized for the bitrate.
+// Samples are copied out of one shared payload, so only the copy into the decoder buffer costs anything.
+public class FakeExtractor implements Extractor {
+
+    public static final int VIDEO_TRACK = 0;
+
+    private int fps;
+    private int samplesCount;
+    private int[] sizes;
+    private int[] flags;
+    private byte[] payload;
+    private int maxSampleSize;
+    private int sample;
+
+    public FakeExtractor(int durationSeconds, int sourceFps, int bitrate) {
+        fps = sourceFps;
+        samplesCount = durationSeconds * fps;
+        sizes = new int[samplesCount];
+        flags = new int[samplesCount];
+        Random random = new Random(2);
+        int frameSize = Math.max(1, bitrate / 8 / fps);
+        for (int a = 0; a < samplesCount; a++) {
+            boolean key = a % fps == 0;
+            sizes[a] = 5 + (key ? frameSize * 4 : frameSize / 2 + random.nextInt(frameSize));
+            flags[a] = key ? MediaExtractor.SAMPLE_FLAG_SYNC : 0;
+            maxSampleSize = Math.max(maxSampleSize, sizes[a]);
+        }
+        payload = SampleStream.createPayload(random, maxSampleSize);
+    }
+
+    public int getMaxSampleSize() {
+        return maxSampleSize;
+    }
+
+    public long getDurationUs() {
+        return samplesCount * 1000000L / fps;
+    }
+
+    @Override
+    public int getSampleTrackIndex() {
+        return sample < samplesCount ? VIDEO_TRACK : -1;
+    }
+
+    @Override
+    public long getSampleTime() {
+        return sample < samplesCount ? sample * 1000000L / fps : -1;
+    }
+
+    @Override
+    public int getSampleFlags() {
+        return sample < samplesCount ? flags[sample] : 0;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        if (sample >= samplesCount) {
+            return -1;
+        }
+        int size = sizes[sample];
+        buffer.clear();
+        buffer.position(offset);
+        buffer.put(payload, 0, size);
+        buffer.limit(offset + size);
+        buffer.position(offset);
+        return size;
+    }
+
+    @Override
+    public boolean advance() {
+        if (sample >= samplesCount) {
+            return false;
+        }
+        sample++;
+        return sample < samplesCount;
+    }
+
+    @Override
+    public void seekTo(long timeUs, int mode) {
+        int target = (int) Math.max(0, Math.min(samplesCount - 1, timeUs * fps / 1000000));
+        if (mode == MediaExtractor.SEEK_TO_PREVIOUS_SYNC) {
+            while (target > 0 && flags[target] == 0) {
+                target--;
+            }
+        } else if (mode == MediaExtractor.SEEK_TO_NEXT_SYNC) {
+            while (target < samplesCount - 1 && flags[target] == 0) {
+                target++;
+            }
+        }
+        sample = target;
+    }
+}
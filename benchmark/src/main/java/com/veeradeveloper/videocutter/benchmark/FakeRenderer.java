@@ -0,0 +1,45 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import com.veeradeveloper.videocutter.FrameRenderer;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Stands in for the decoder's SurfaceTexture and the encoder's input surface. A rendered frame is available as soon
+// as the decoder releases it; drawing takes renderTimeNs of the pipeline thread, like the GL draw and swap would.
+public class FakeRenderer implements FrameRenderer {
+
+    private FakeEncoder encoder;
+    private long renderTimeNs;
+    private boolean frameAvailable;
+    private volatile int framesDrawn;
+
+    public FakeRenderer(FakeEncoder videoEncoder, long frameRenderTimeNs) {
+        encoder = videoEncoder;
+        renderTimeNs = frameRenderTimeNs;
+    }
+
+    public void onFrameAvailable() {
+        frameAvailable = true;
+    }
+
+    public int getFramesDrawn() {
+        return framesDrawn;
+    }
+
+    @Override
+    public void awaitFrame() {
+        if (!frameAvailable) {
+            throw new RuntimeException("Surface frame wait timed out");
+        }
+        frameAvailable = false;
+    }
+
+    @Override
+    public void drawFrame(long presentationTimeNs) {
+        if (renderTimeNs > 0) {
+            LockSupport.parkNanos(renderTimeNs);
+        }
+        framesDrawn++;
+        encoder.queueFrame(presentationTimeNs / 1000);
+    }
+}
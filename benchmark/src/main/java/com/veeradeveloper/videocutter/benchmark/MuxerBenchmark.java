@@ -0,0 +1,257 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaCodec;
+
+import com.veeradeveloper.videocutter.DurationInterleavePolicy;
+import com.veeradeveloper.videocutter.MP4Builder;
+import com.veeradeveloper.videocutter.Mp4Demuxer;
+import com.veeradeveloper.videocutter.Mp4Movie;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Muxes a synthetic stream (one minute, ten minutes and one hour of 60 fps video plus AAC audio) through MP4Builder.
+// Iterations are one second long, so with long streams every iteration measures a single movie.
+// finishMovie runs for every duration, so its latency can be set against the number of samples in the movie.
+// Run with the gc profiler (./gradlew :benchmark:jmh does) to get the allocation rate next to the timings.
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class MuxerBenchmark {
+
+    @Param({"60", "600", "3600"})
+    public int durationSeconds;
+
+    @Param({"60"})
+    public int fps;
+
+    @Param({"4000000"})
+    public int videoBitrate;
+
+    // 0 writes every sample as it comes, otherwise tracks are interleaved in chunks of this many milliseconds
+    @Param({"0", "500"})
+    public long interleaveMs;
+
+    // how far the audio samples run ahead of the video samples
+    @Param({"0", "1000"})
+    public long audioLeadMs;
+
+    private SampleStream stream;
+    private MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private int[] trackIndexes = new int[2];
+    private File outputFile;
+
+    // What the written movies look like. Like the writeMovie score these are per minute, so dividing a counter
+    // by the score gives its value per movie.
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Movies {
+        // mdat chunks finished by the builder
+        public long mdatChunks;
+        // size of the moov box, mostly the sample tables
+        public long moovBytes;
+        // write system calls on the output file
+        public long writeCalls;
+        public long bytesWritten;
+    }
+
+    @Setup(Level.Trial)
+    public void createStream() throws IOException {
+        stream = new SampleStream(durationSeconds, fps, videoBitrate, 128000, audioLeadMs);
+        outputFile = File.createTempFile("muxer", ".mp4");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() {
+        outputFile.delete();
+    }
+
+    private Mp4Movie createMovie(File file) {
+        Mp4Movie movie = new Mp4Movie();
+        movie.setCacheFile(file);
+        movie.setSize(1280, 720);
+        if (interleaveMs > 0) {
+            movie.setInterleavePolicy(new DurationInterleavePolicy(interleaveMs));
+        }
+        return movie;
+    }
+
+    private MP4Builder createBuilder(Mp4Movie movie) throws Exception {
+        MP4Builder mp4Builder = new MP4Builder().createMovie(movie);
+        stream.addTracks(mp4Builder, trackIndexes);
+        return mp4Builder;
+    }
+
+    // writeSampleData throughput: the whole stream plus the moov box, as one movie.
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MINUTES)
+    public void writeMovie(Movies movies) throws Exception {
+        MP4Builder mp4Builder = createBuilder(createMovie(outputFile));
+        movies.mdatChunks += stream.write(mp4Builder, trackIndexes, info, 0, stream.samplesCount);
+        mp4Builder.finishMovie(false);
+        movies.moovBytes += mp4Builder.getMovieBoxSize();
+        movies.writeCalls += mp4Builder.getWriteCalls();
+        movies.bytesWritten += outputFile.length();
+    }
+
+    // The same stream written as one second fragments, which keep no sample tables in memory. mdatChunks counts
+    // the fragments here and moovBytes stays 0, the moov box has no samples.
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MINUTES)
+    public void writeFragmentedMovie(Movies movies) throws Exception {
+        Mp4Movie movie = createMovie(outputFile);
+        movie.setFragmented(1000, 0);
+        MP4Builder mp4Builder = createBuilder(movie);
+        movies.mdatChunks += stream.write(mp4Builder, trackIndexes, info, 0, stream.samplesCount);
+        mp4Builder.finishMovie(false);
+        movies.writeCalls += mp4Builder.getWriteCalls();
+        movies.bytesWritten += outputFile.length();
+    }
+
+    // A movie with every sample written and only the moov box missing.
+    @State(Scope.Thread)
+    public static class WrittenMovie {
+        // moves the moov box in front of the samples, copying them into a new file
+        @Param({"false", "true"})
+        public boolean fastStart;
+
+        private MP4Builder builder;
+
+        @Setup(Level.Invocation)
+        public void writeSamples(MuxerBenchmark benchmark) throws Exception {
+            Mp4Movie movie = benchmark.createMovie(benchmark.outputFile);
+            movie.setFastStart(fastStart);
+            builder = benchmark.createBuilder(movie);
+            benchmark.stream.write(builder, benchmark.trackIndexes, benchmark.info, 0, benchmark.stream.samplesCount);
+        }
+    }
+
+    // finishMovie latency: flushing the last chunk and building and writing the sample tables.
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void finishMovie(WrittenMovie movie) throws Exception {
+        movie.builder.finishMovie(false);
+    }
+
+    // Read locality of a written movie, per movie like the Movies counters.
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Playback {
+        // reads of a player that buffers READ_AHEAD_BYTES and seeks when the next sample is outside the buffer
+        public long playbackReads;
+        // bytes those reads fetched, more than the movie when the reader keeps jumping between tracks
+        public long playbackBytes;
+    }
+
+    // A finished movie with its samples merged across tracks in decode order, the order a player needs them.
+    // Like a player with a read position per track, a read starts at the lowest of the positions.
+    @State(Scope.Thread)
+    public static class FinishedMovie {
+        private static final int READ_AHEAD_BYTES = 1024 * 1024;
+
+        private File file;
+        private FileChannel channel;
+        private long[] offsets;
+        private int[] sizes;
+        private long[] readOffsets;
+        private ByteBuffer buffer;
+
+        @Setup(Level.Trial)
+        public void writeMovie(MuxerBenchmark benchmark) throws Exception {
+            file = File.createTempFile("playback", ".mp4");
+            MP4Builder builder = benchmark.createBuilder(benchmark.createMovie(file));
+            benchmark.stream.write(builder, benchmark.trackIndexes, benchmark.info, 0, benchmark.stream.samplesCount);
+            builder.finishMovie(false);
+
+            Mp4Demuxer demuxer = new Mp4Demuxer(file);
+            ArrayList<Mp4Demuxer.TrackInfo> tracks = demuxer.getTracks();
+            demuxer.close();
+            int count = 0;
+            for (int a = 0; a < tracks.size(); a++) {
+                count += tracks.get(a).samplesCount;
+            }
+            offsets = new long[count];
+            sizes = new int[count];
+            readOffsets = new long[count];
+            int maxSize = READ_AHEAD_BYTES;
+            int[] positions = new int[tracks.size()];
+            for (int a = 0; a < count; a++) {
+                int next = -1;
+                readOffsets[a] = Long.MAX_VALUE;
+                for (int b = 0; b < tracks.size(); b++) {
+                    Mp4Demuxer.TrackInfo track = tracks.get(b);
+                    if (positions[b] < track.samplesCount) {
+                        if (next == -1 || track.getDecodeTimeUs(positions[b]) < tracks.get(next).getDecodeTimeUs(positions[next])) {
+                            next = b;
+                        }
+                        readOffsets[a] = Math.min(readOffsets[a], track.offsets[positions[b]]);
+                    }
+                }
+                Mp4Demuxer.TrackInfo track = tracks.get(next);
+                offsets[a] = track.offsets[positions[next]];
+                sizes[a] = track.sizes[positions[next]];
+                maxSize = Math.max(maxSize, sizes[a]);
+                positions[next]++;
+            }
+            buffer = ByteBuffer.allocateDirect(maxSize);
+            channel = new RandomAccessFile(file, "r").getChannel();
+        }
+
+        @TearDown(Level.Trial)
+        public void deleteMovie() throws IOException {
+            channel.close();
+            file.delete();
+        }
+    }
+
+    // Plays the movie back from the file: the aux counters show how well the chunks of the tracks are interleaved.
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MINUTES)
+    public void readMovie(FinishedMovie movie, Playback playback) throws Exception {
+        long bufferStart = 0;
+        long bufferEnd = 0;
+        for (int a = 0; a < movie.offsets.length; a++) {
+            long offset = movie.offsets[a];
+            if (offset < bufferStart || offset + movie.sizes[a] > bufferEnd) {
+                long readOffset = movie.readOffsets[a];
+                if (offset + movie.sizes[a] - readOffset > movie.buffer.capacity()) {
+                    readOffset = offset;
+                }
+                movie.buffer.clear();
+                int read;
+                do {
+                    read = movie.channel.read(movie.buffer, readOffset + movie.buffer.position());
+                } while (read > 0 && movie.buffer.hasRemaining());
+                bufferStart = readOffset;
+                bufferEnd = readOffset + movie.buffer.position();
+                playback.playbackReads++;
+                playback.playbackBytes += movie.buffer.position();
+            }
+        }
+    }
+}
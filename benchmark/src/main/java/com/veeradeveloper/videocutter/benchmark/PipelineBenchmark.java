@@ -0,0 +1,124 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import com.veeradeveloper.videocutter.ConvertJob;
+import com.veeradeveloper.videocutter.ConvertMetrics;
+import com.veeradeveloper.videocutter.CutList;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Runs whole conversions through CodecPipeline and AsyncMP4Builder with in-memory codecs. With codecFrameTimeUs
+// at 0 the codecs are free and the result is the cost of the event loop, cut handling and muxing; with a real
+// codec's frame time it shows how much of that the pipeline hides behind the codecs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MINUTES)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class PipelineBenchmark {
+
+    @Param({"60"})
+    public int durationSeconds;
+
+    @Param({"30"})
+    public int fps;
+
+    @Param({"2000000"})
+    public int videoBitrate;
+
+    @Param({"0", "2000"})
+    public long codecFrameTimeUs;
+
+    // 1 converts the whole source, more cuts it into that many kept ranges with gaps in between
+    @Param({"1", "3"})
+    public int segments;
+
+    private FakeExtractor extractor;
+    private FakeAudioExtractor audioExtractor;
+    private CutList cutList;
+    private File outputFile;
+    private PipelineHarness harness;
+
+    // What the conversions did. Like the score these are per minute, so dividing a counter by the score gives its
+    // value per conversion.
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Conversions {
+        public long framesRendered;
+        public long audioSamples;
+        public long bytesWritten;
+        // time the pipeline thread slept until a codec had something for it
+        public long codecWaitUs;
+
+        private void add(ConvertMetrics metrics) {
+            framesRendered += metrics.getFramesRendered();
+            audioSamples += metrics.getAudioSamples();
+            bytesWritten += metrics.getBytesWritten();
+            codecWaitUs += metrics.getStageTimeNs(ConvertMetrics.STAGE_CODEC_EVENT_WAIT) / 1000;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void createSource() throws IOException {
+        extractor = new FakeExtractor(durationSeconds, fps, videoBitrate * 4);
+        audioExtractor = new FakeAudioExtractor(durationSeconds, 128000);
+        if (segments <= 1) {
+            cutList = new CutList(0, -1);
+        } else {
+            cutList = new CutList();
+            long segmentUs = extractor.getDurationUs() / (segments * 2);
+            for (int a = 0; a < segments; a++) {
+                // ranges start half a second after a key frame, so every cut decodes frames it then drops
+                cutList.addSegment(a * segmentUs * 2 + 500000, a * segmentUs * 2 + segmentUs);
+            }
+        }
+        outputFile = File.createTempFile("pipeline", ".mp4");
+        harness = new PipelineHarness(extractor, audioExtractor, cutList, fps, videoBitrate, codecFrameTimeUs * 1000, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteOutput() {
+        outputFile.delete();
+    }
+
+    // A complete conversion job, from seeking the source to the finished moov box.
+    @Benchmark
+    public boolean convert(Conversions conversions) throws Exception {
+        ConvertJob job = harness.createJob(outputFile);
+        job.run();
+        conversions.add(job.getMetrics());
+        return job.get();
+    }
+
+    // A conversion job canceled from another thread halfway through: the time to get there plus unwinding the codecs,
+    // the audio copier and the muxer, which is what the user waits for after pressing cancel.
+    @Benchmark
+    public boolean cancel(Conversions conversions) throws Exception {
+        ConvertJob job = harness.createJob(outputFile);
+        Thread thread = new Thread(job, "ConvertJob");
+        thread.start();
+        harness.awaitFramesDrawn(job, durationSeconds * fps / (segments > 1 ? 4 : 2));
+        job.cancel(true);
+        // get() returns as soon as the job is canceled, the conversion is done unwinding when its thread is
+        thread.join();
+        conversions.add(job.getMetrics());
+        return job.isCancelled();
+    }
+}
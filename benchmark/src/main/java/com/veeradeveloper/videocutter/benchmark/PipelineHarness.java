@@ -0,0 +1,137 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaExtractor;
+
+import com.veeradeveloper.videocutter.AsyncMP4Builder;
+import com.veeradeveloper.videocutter.AudioTrackCopier;
+import com.veeradeveloper.videocutter.CodecPipeline;
+import com.veeradeveloper.videocutter.ConvertJob;
+import com.veeradeveloper.videocutter.ConvertMessage;
+import com.veeradeveloper.videocutter.ConvertMetrics;
+import com.veeradeveloper.videocutter.ConvertProgress;
+import com.veeradeveloper.videocutter.CutList;
+import com.veeradeveloper.videocutter.MP4Builder;
+import com.veeradeveloper.videocutter.Mp4Movie;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+// One conversion the way MediaController runs it on API 21+: a ConvertJob whose callable has CodecPipeline drive the
+// fake decoder, renderer and encoder while an AudioTrackCopier, started with the first video frame, copies the audio
+// track into the same AsyncMP4Builder. Only the codecs, the GL surfaces and the source file are replaced.
+public class PipelineHarness implements CodecPipeline.Listener, AudioTrackCopier.Listener {
+
+    private static final int RESULT_WIDTH = 1280;
+    private static final int RESULT_HEIGHT = 720;
+
+    private FakeExtractor extractor;
+    private FakeAudioExtractor audioExtractor;
+    private CutList cutList;
+    private int fps;
+    private int videoBitrate;
+    private long codecFrameTimeNs;
+    private long renderTimeNs;
+
+    private ConvertMessage messageObject;
+    private ConvertMetrics metrics;
+    private volatile FakeRenderer renderer;
+    private AsyncMP4Builder muxer;
+    private AudioTrackCopier audioCopier;
+
+    public PipelineHarness(FakeExtractor source, FakeAudioExtractor audioSource, CutList list, int resultFps, int bitrate, long frameTimeNs, long frameRenderTimeNs) {
+        extractor = source;
+        audioExtractor = audioSource;
+        cutList = list;
+        fps = resultFps;
+        videoBitrate = bitrate;
+        codecFrameTimeNs = frameTimeNs;
+        renderTimeNs = frameRenderTimeNs;
+    }
+
+    // A job like MediaController.scheduleVideoConvert creates: cancel() sets the flag the conversion polls.
+    public ConvertJob createJob(final File outputFile) {
+        messageObject = new ConvertMessage();
+        metrics = new ConvertMetrics();
+        renderer = null;
+        return new ConvertJob(messageObject, new ConvertProgress(), metrics, ConvertJob.PRIORITY_NORMAL, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return convert(outputFile);
+            }
+        });
+    }
+
+    // Waits on another thread, the way a user would watch the progress, until the running job drew this many frames.
+    public void awaitFramesDrawn(ConvertJob job, int frames) {
+        while (!job.isDone() && (renderer == null || renderer.getFramesDrawn() < frames)) {
+            Thread.yield();
+        }
+    }
+
+    // Returns false if the conversion was canceled; the output is finished either way.
+    private boolean convert(File outputFile) throws Exception {
+        Mp4Movie movie = new Mp4Movie();
+        movie.setCacheFile(outputFile);
+        movie.setSize(RESULT_WIDTH, RESULT_HEIGHT);
+        metrics.start();
+        muxer = new AsyncMP4Builder(new MP4Builder().createMovie(movie));
+        muxer.setMetrics(metrics);
+        audioCopier = null;
+
+        FakeEncoder encoder = new FakeEncoder(RESULT_WIDTH, RESULT_HEIGHT, fps, videoBitrate, codecFrameTimeNs);
+        FakeDecoder decoder = new FakeDecoder(extractor.getMaxSampleSize(), codecFrameTimeNs);
+        FakeRenderer frameRenderer = new FakeRenderer(encoder, renderTimeNs);
+        decoder.setRenderer(frameRenderer);
+        renderer = frameRenderer;
+        CodecPipeline pipeline = new CodecPipeline(decoder, encoder, cutList, this);
+        pipeline.setMetrics(metrics);
+
+        boolean error = false;
+        try {
+            extractor.seekTo(cutList.getStart(0), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+            decoder.start();
+            pipeline.run(extractor, FakeExtractor.VIDEO_TRACK, frameRenderer, muxer, RESULT_WIDTH, RESULT_HEIGHT);
+        } catch (Exception e) {
+            error = true;
+            if (!isCanceled()) {
+                throw e;
+            }
+        } finally {
+            muxer.finishWriting();
+            if (audioCopier != null) {
+                if (error) {
+                    audioCopier.interrupt();
+                }
+                audioCopier.join();
+            }
+            decoder.release();
+            encoder.release();
+            muxer.finishMovie(error);
+            metrics.finish();
+        }
+        if (audioCopier != null && !error) {
+            audioCopier.finish();
+        }
+        return !error;
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return messageObject.canceled || Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    public void onVideoStarted(long presentationTimeUs) {
+        if (cutList.getSegmentsCount() > 1) {
+            audioCopier = new AudioTrackCopier(muxer, cutList, this);
+        } else {
+            audioCopier = new AudioTrackCopier(muxer, presentationTimeUs, cutList.getEnd(0), this);
+        }
+        audioCopier.setSource(audioExtractor, FakeAudioExtractor.AUDIO_TRACK, audioExtractor.getTrackFormat());
+        audioCopier.start();
+    }
+
+    @Override
+    public void onDataWritten() {
+    }
+}
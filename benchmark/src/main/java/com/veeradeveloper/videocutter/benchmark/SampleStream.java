@@ -0,0 +1,120 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import com.veeradeveloper.videocutter.MP4Builder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Synthetic encoder output: H.264 frames with a key frame every two seconds and 1024 sample AAC frames,
+// already interleaved the way MediaController hands them to the muxer. Sizes are random around the bitrate.
+// Audio can run ahead of the video by audioLeadMs, like the audio copier thread does in front of the encoder.
+public class SampleStream {
+
+    public static final int AUDIO_SAMPLE_RATE = 44100;
+
+    public final int samplesCount;
+    public final int[] sizes;
+    public final long[] presentationTimes;
+    public final int[] flags;
+    public final boolean[] audio;
+    public final long totalBytes;
+    public final ByteBuffer data;
+
+    public SampleStream(int durationSeconds, int fps, int videoBitrate, int audioBitrate, long audioLeadMs) {
+        int videoFrames = durationSeconds * fps;
+        int audioFrames = (int) ((long) durationSeconds * AUDIO_SAMPLE_RATE / 1024);
+        samplesCount = videoFrames + audioFrames;
+        sizes = new int[samplesCount];
+        presentationTimes = new long[samplesCount];
+        flags = new int[samplesCount];
+        audio = new boolean[samplesCount];
+
+        Random random = new Random(1);
+        int gop = fps * 2;
+        int frameSize = videoBitrate / 8 / fps;
+        int audioFrameSize = (int) ((long) audioBitrate / 8 * 1024 / AUDIO_SAMPLE_RATE);
+        int maxSize = 0;
+        long bytes = 0;
+        int video = 0;
+        int sound = 0;
+        for (int a = 0; a < samplesCount; a++) {
+            long videoTime = video * 1000000L / fps;
+            long audioTime = sound * 1024L * 1000000 / AUDIO_SAMPLE_RATE;
+            if (video < videoFrames && (sound >= audioFrames || videoTime <= audioTime - audioLeadMs * 1000)) {
+                boolean key = video % gop == 0;
+                sizes[a] = 5 + (key ? frameSize * 8 : frameSize / 2 + random.nextInt(frameSize));
+                presentationTimes[a] = videoTime;
+                flags[a] = key ? MediaCodec.BUFFER_FLAG_SYNC_FRAME : 0;
+                video++;
+            } else {
+                sizes[a] = audioFrameSize / 2 + random.nextInt(audioFrameSize);
+                presentationTimes[a] = audioTime;
+                audio[a] = true;
+                sound++;
+            }
+            maxSize = Math.max(maxSize, sizes[a]);
+            bytes += sizes[a];
+        }
+        totalBytes = bytes;
+
+        data = ByteBuffer.allocateDirect(maxSize);
+        data.put(createPayload(random, maxSize));
+        data.clear();
+    }
+
+    // Output format of a baseline profile encoder, with sps and pps the way MediaCodec reports them.
+    public static MediaFormat createVideoFormat(int width, int height) {
+        MediaFormat videoFormat = MediaFormat.createVideoFormat("video/avc", width, height);
+        videoFormat.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 0x67, 0x42, (byte) 0xc0, 0x1f, (byte) 0xda, 0x01}));
+        videoFormat.setByteBuffer("csd-1", ByteBuffer.wrap(new byte[]{0, 0, 0, 1, 0x68, (byte) 0xce, 0x3c, (byte) 0x80}));
+        return videoFormat;
+    }
+
+    public static MediaFormat createAudioFormat() {
+        MediaFormat audioFormat = MediaFormat.createAudioFormat("audio/mp4a-latm", AUDIO_SAMPLE_RATE, 2);
+        audioFormat.setByteBuffer("csd-0", ByteBuffer.wrap(new byte[]{0x12, 0x10}));
+        return audioFormat;
+    }
+
+    // Random bytes without zeros, so the only start code is the one at the beginning.
+    public static byte[] createPayload(Random random, int size) {
+        byte[] payload = new byte[size];
+        random.nextBytes(payload);
+        for (int a = 0; a < size; a++) {
+            if (payload[a] == 0) {
+                payload[a] = 1;
+            }
+        }
+        payload[0] = 0;
+        payload[1] = 0;
+        payload[2] = 0;
+        payload[3] = 1;
+        payload[4] = 0x65;
+        return payload;
+    }
+
+    public void addTracks(MP4Builder builder, int[] trackIndexes) throws Exception {
+        trackIndexes[0] = builder.addTrack(createVideoFormat(1280, 720), false);
+        trackIndexes[1] = builder.addTrack(createAudioFormat(), true);
+    }
+
+    // Writes samples [start, end) and returns how many times the builder finished an mdat chunk.
+    public int write(MP4Builder builder, int[] trackIndexes, MediaCodec.BufferInfo info, int start, int end) throws Exception {
+        int flushes = 0;
+        for (int a = start; a < end; a++) {
+            info.set(0, sizes[a], presentationTimes[a], flags[a]);
+            data.clear();
+            if (!audio[a]) {
+                // the muxer rewrites the start code into a length prefix in place
+                data.putInt(0, 1);
+            }
+            if (builder.writeSampleData(trackIndexes[audio[a] ? 1 : 0], data, info, audio[a])) {
+                flushes++;
+            }
+        }
+        return flushes;
+    }
+}
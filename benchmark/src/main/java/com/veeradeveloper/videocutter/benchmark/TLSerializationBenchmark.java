@@ -0,0 +1,151 @@
+package com.veeradeveloper.videocutter.benchmark;
+
+import com.veeradeveloper.videocutter.NativeByteBuffer;
+import com.veeradeveloper.videocutter.TLObject;
+import com.veeradeveloper.videocutter.TLRPC;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+// serializeToStream and TLdeserialize through NativeByteBuffer for a TL_document with attributes and a thumb,
+// and for a TL_messages_messages vector of text and document messages. One operation is one top level object.
+// The bytes counter gives bytes/sec; the gc profiler (./gradlew :benchmark:jmh) gives allocations per object.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TLSerializationBenchmark {
+
+    @Param({"document", "messages"})
+    public String object;
+
+    @Param({"100"})
+    public int messagesCount;
+
+    private TLObject source;
+    private NativeByteBuffer output = new NativeByteBuffer();
+    private NativeByteBuffer input = new NativeByteBuffer();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    @Setup(Level.Trial)
+    public void createObject() {
+        if ("document".equals(object)) {
+            source = createDocument(1);
+        } else {
+            TLRPC.TL_messages_messages messages = new TLRPC.TL_messages_messages();
+            for (int a = 0; a < messagesCount; a++) {
+                messages.messages.add(createMessage(a));
+            }
+            source = messages;
+        }
+        output.buffer = ByteBuffer.allocateDirect(4 * 1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        source.serializeToStream(output);
+        input.buffer = ByteBuffer.allocateDirect(output.length()).order(ByteOrder.LITTLE_ENDIAN);
+        output.buffer.flip();
+        input.buffer.put(output.buffer);
+        input.buffer.flip();
+        output.buffer.clear();
+    }
+
+    private static TLRPC.TL_document createDocument(int index) {
+        TLRPC.TL_fileLocation location = new TLRPC.TL_fileLocation();
+        location.dc_id = 2;
+        location.volume_id = 0x1234567890L + index;
+        location.local_id = 1000 + index;
+        location.secret = 0x0fedcba987654321L;
+        TLRPC.TL_photoSize thumb = new TLRPC.TL_photoSize();
+        thumb.type = "s";
+        thumb.location = location;
+        thumb.w = 90;
+        thumb.h = 51;
+        thumb.size = 1876;
+
+        TLRPC.TL_document document = new TLRPC.TL_document();
+        document.id = 0x4000000000L + index;
+        document.access_hash = 0x7a7a7a7a7a7aL * index;
+        document.date = 1500000000 + index;
+        document.mime_type = "video/mp4";
+        document.size = 25 * 1024 * 1024;
+        document.thumb = thumb;
+        document.dc_id = 2;
+        TLRPC.TL_documentAttributeVideo video = new TLRPC.TL_documentAttributeVideo();
+        video.duration = 184;
+        video.w = 1280;
+        video.h = 720;
+        document.attributes.add(video);
+        TLRPC.TL_documentAttributeFilename fileName = new TLRPC.TL_documentAttributeFilename();
+        fileName.file_name = "VID_20170708_111233_" + index + ".mp4";
+        document.attributes.add(fileName);
+        return document;
+    }
+
+    // Ids are negative, as for messages stored locally, so the attach path that TL_message always writes is read back.
+    private static TLRPC.TL_message createMessage(int index) {
+        TLRPC.TL_message message = new TLRPC.TL_message();
+        message.id = -1 - index;
+        message.flags = 256;
+        message.from_id = 777000 + index % 3;
+        TLRPC.TL_peerUser peer = new TLRPC.TL_peerUser();
+        peer.user_id = 777000;
+        message.to_id = peer;
+        message.date = 1500000000 + index * 60;
+        message.attachPath = "";
+        if (index % 2 == 0) {
+            message.message = "Message " + index + ": the trimmed clip is ready, sending it now";
+            message.media = new TLRPC.TL_messageMediaEmpty();
+        } else {
+            message.message = "";
+            message.flags |= 512;
+            TLRPC.TL_messageMediaDocument media = new TLRPC.TL_messageMediaDocument();
+            media.document = createDocument(index);
+            media.caption = "clip " + index;
+            message.media = media;
+            message.attachPath = "/storage/emulated/0/DCIM/ashish" + index + ".mp4";
+        }
+        return message;
+    }
+
+    @Benchmark
+    public int serialize(Bytes counter) {
+        output.buffer.clear();
+        source.serializeToStream(output);
+        int length = output.length();
+        counter.bytes += length;
+        return length;
+    }
+
+    @Benchmark
+    public TLObject deserialize(Bytes counter) {
+        input.buffer.position(0);
+        TLObject result;
+        if (source instanceof TLRPC.Document) {
+            result = TLRPC.Document.TLdeserialize(input, input.readInt32(true), true);
+        } else {
+            result = TLRPC.messages_Messages.TLdeserialize(input, input.readInt32(true), true);
+        }
+        counter.bytes += input.getPosition();
+        return result;
+    }
+}